@@ -0,0 +1,228 @@
+package com.nbabot;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.nbabot.api.NBAApiClient;
+import com.nbabot.database.PlayerStatsRepository;
+import com.nbabot.database.Storage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Classifiche della stagione corrente (punti, rimbalzi, assist a partita) costruite dalle
+ * statistiche per partita già scaricate dal bot. I totali per giocatore stanno in array
+ * primitivi aggiornati a ogni nuova partita; il calcolo è un fork-join sugli array e il
+ * risultato resta in cache finché non arrivano dati nuovi.
+ */
+public class Leaderboard implements NBAApiClient.StatisticsListener {
+    public enum Category { POINTS, REBOUNDS, ASSISTS }
+
+    public record Leader(String name, int games, double perGame) {}
+
+    private static final int TOP = 10;
+    private static final int SEQUENTIAL_THRESHOLD = 1024;
+
+    private final Storage database;
+    private final int season;
+    private final int minGames;
+
+    private final Map<Integer, Integer> indexByPlayer = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+    private int[] games = new int[256];
+    private int[] points = new int[256];
+    private int[] rebounds = new int[256];
+    private int[] assists = new int[256];
+    private int size;
+
+    private long version;
+    private long cachedVersion = -1;
+    private Map<Category, List<Leader>> cached;
+
+    public Leaderboard(Storage database, int season, int minGames) {
+        this.database = database;
+        this.season = season;
+        this.minGames = minGames;
+        for (PlayerStatsRepository.PlayerSeasonTotals totals : database.getPlayerSeasonTotals(season)) {
+            update(totals.playerId(), totals.playerName(), totals.games(),
+                    totals.points(), totals.rebounds(), totals.assists());
+        }
+    }
+
+    public int getMinGames() {
+        return minGames;
+    }
+
+    @Override
+    public void onStatistics(int playerId, int season, JsonArray stats) {
+        if (season != this.season || stats.isEmpty()) {
+            return;
+        }
+
+        List<PlayerStatsRepository.PlayerGameStat> rows = new ArrayList<>(stats.size());
+        String name = "Giocatore " + playerId;
+        int pts = 0, reb = 0, ast = 0;
+        for (JsonElement e : stats) {
+            JsonObject s = e.getAsJsonObject();
+            if (!s.has("game") || s.get("game").isJsonNull()) {
+                continue;
+            }
+            JsonObject player = s.has("player") && !s.get("player").isJsonNull() ? s.getAsJsonObject("player") : null;
+            if (player != null && player.has("firstname") && player.has("lastname")) {
+                name = player.get("firstname").getAsString() + " " + player.get("lastname").getAsString();
+            }
+            int gamePts = intOf(s, "points");
+            int gameReb = intOf(s, "totReb");
+            int gameAst = intOf(s, "assists");
+            rows.add(new PlayerStatsRepository.PlayerGameStat(
+                    playerId, s.getAsJsonObject("game").get("id").getAsInt(), season, name, gamePts, gameReb, gameAst));
+            pts += gamePts;
+            reb += gameReb;
+            ast += gameAst;
+        }
+
+        // Persiste solo se la stagione del giocatore è cambiata dall'ultima lettura
+        if (update(playerId, name, rows.size(), pts, reb, ast)) {
+            database.savePlayerGameStats(rows);
+        }
+    }
+
+    private static int intOf(JsonObject s, String field) {
+        return !s.has(field) || s.get(field).isJsonNull() ? 0 : s.get(field).getAsInt();
+    }
+
+    private synchronized boolean update(int playerId, String name, int gameCount, int pts, int reb, int ast) {
+        Integer index = indexByPlayer.get(playerId);
+        if (index == null) {
+            index = size++;
+            if (index == games.length) {
+                int capacity = games.length * 2;
+                games = Arrays.copyOf(games, capacity);
+                points = Arrays.copyOf(points, capacity);
+                rebounds = Arrays.copyOf(rebounds, capacity);
+                assists = Arrays.copyOf(assists, capacity);
+            }
+            indexByPlayer.put(playerId, index);
+            names.add(name);
+        } else if (games[index] == gameCount && points[index] == pts
+                && rebounds[index] == reb && assists[index] == ast) {
+            return false;
+        }
+
+        names.set(index, name);
+        games[index] = gameCount;
+        points[index] = pts;
+        rebounds[index] = reb;
+        assists[index] = ast;
+        version++;
+        return true;
+    }
+
+    public Map<Category, List<Leader>> getLeaders() {
+        int[] g, p, r, a;
+        List<String> n;
+        long snapshotVersion;
+        synchronized (this) {
+            if (cachedVersion == version) {
+                return cached;
+            }
+            g = Arrays.copyOf(games, size);
+            p = Arrays.copyOf(points, size);
+            r = Arrays.copyOf(rebounds, size);
+            a = Arrays.copyOf(assists, size);
+            n = List.copyOf(names);
+            snapshotVersion = version;
+        }
+
+        Map<Category, List<Leader>> result = new HashMap<>();
+        result.put(Category.POINTS, toLeaders(ForkJoinPool.commonPool().invoke(new TopTask(g, p, minGames, 0, g.length)), g, p, n));
+        result.put(Category.REBOUNDS, toLeaders(ForkJoinPool.commonPool().invoke(new TopTask(g, r, minGames, 0, g.length)), g, r, n));
+        result.put(Category.ASSISTS, toLeaders(ForkJoinPool.commonPool().invoke(new TopTask(g, a, minGames, 0, g.length)), g, a, n));
+
+        synchronized (this) {
+            if (snapshotVersion == version) {
+                cached = result;
+                cachedVersion = snapshotVersion;
+            }
+        }
+        return result;
+    }
+
+    private static List<Leader> toLeaders(int[] top, int[] games, int[] totals, List<String> names) {
+        List<Leader> leaders = new ArrayList<>(top.length);
+        for (int i : top) {
+            leaders.add(new Leader(names.get(i), games[i], (double) totals[i] / games[i]));
+        }
+        return leaders;
+    }
+
+    /**
+     * Indici dei migliori TOP giocatori per media, calcolati dividendo l'intervallo a metà.
+     */
+    private static final class TopTask extends RecursiveTask<int[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] games;
+        private final int[] totals;
+        private final int minGames;
+        private final int from;
+        private final int to;
+
+        TopTask(int[] games, int[] totals, int minGames, int from, int to) {
+            this.games = games;
+            this.totals = totals;
+            this.minGames = minGames;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected int[] compute() {
+            if (to - from <= SEQUENTIAL_THRESHOLD) {
+                int[] top = new int[0];
+                for (int i = from; i < to; i++) {
+                    if (games[i] >= minGames && games[i] > 0) {
+                        top = insert(top, i);
+                    }
+                }
+                return top;
+            }
+
+            int mid = (from + to) >>> 1;
+            TopTask left = new TopTask(games, totals, minGames, from, mid);
+            left.fork();
+            int[] right = new TopTask(games, totals, minGames, mid, to).compute();
+            int[] merged = left.join();
+            for (int i : right) {
+                merged = insert(merged, i);
+            }
+            return merged;
+        }
+
+        private int[] insert(int[] top, int candidate) {
+            double value = average(candidate);
+            int pos = top.length;
+            while (pos > 0 && average(top[pos - 1]) < value) {
+                pos--;
+            }
+            if (pos >= TOP) {
+                return top;
+            }
+            int[] next = new int[Math.min(top.length + 1, TOP)];
+            System.arraycopy(top, 0, next, 0, pos);
+            next[pos] = candidate;
+            System.arraycopy(top, pos, next, pos + 1, next.length - pos - 1);
+            return next;
+        }
+
+        private double average(int i) {
+            return (double) totals[i] / games[i];
+        }
+    }
+}
@@ -1,12 +1,23 @@
 package com.nbabot;
 
+import com.nbabot.api.GameScheduleSync;
 import com.nbabot.api.NBAApiClient;
+import com.nbabot.api.PlayerPrefetcher;
+import com.nbabot.api.TrafficArchive;
+import com.nbabot.api.TransportConfig;
 import com.nbabot.database.DatabaseManager;
+import com.nbabot.database.ShardedStorage;
+import com.nbabot.database.Storage;
+import com.nbabot.webhook.WebhookServer;
 import org.apache.commons.configuration2.Configuration;
 import org.apache.commons.configuration2.builder.fluent.Configurations;
+import org.telegram.telegrambots.client.okhttp.OkHttpTelegramClient;
 import org.telegram.telegrambots.longpolling.TelegramBotsLongPollingApplication;
+import org.telegram.telegrambots.meta.api.methods.updates.SetWebhook;
 
 import java.io.File;
+import java.io.IOException;
+import java.time.ZoneId;
 
 public class Main {
     public static void main(String[] args) {
@@ -28,28 +39,74 @@ public class Main {
                 System.exit(1);
             }
 
-            if (apiKey == null || apiKey.equals("inserisci_qui_la_tua_api_key")) {
+            String apiMode = config.getString("API_MODE", "live").toLowerCase();
+            // In replay le risposte arrivano dall'archivio: la API key non serve
+            if (!apiMode.equals("replay") && (apiKey == null || apiKey.equals("inserisci_qui_la_tua_api_key"))) {
                 System.err.println("Errore: API key non configurato!");
                 System.err.println("Modifica il file config.properties con la tua API key.");
                 System.exit(1);
             }
 
             System.out.println("Inizializzazione database...");
-            DatabaseManager database = new DatabaseManager(dbPath);
+            int shardCount = config.getInt("DB_SHARDS", 1);
+            Storage database = shardCount > 1
+                    ? new ShardedStorage(dbPath, shardCount)
+                    : new DatabaseManager(dbPath);
+            database.startMaintenance(
+                    config.getInt("HISTORY_RETENTION_DAYS", 30),
+                    config.getLong("MAINTENANCE_INTERVAL_HOURS", 24));
 
             System.out.println("Inizializzazione client API...");
-            NBAApiClient nbaApi = new NBAApiClient(apiKey, apiBaseUrl);
+            TransportConfig transport = new TransportConfig(
+                    config.getInt("HTTP_MAX_IDLE_CONNECTIONS", 5),
+                    config.getLong("HTTP_KEEP_ALIVE_SECONDS", 300),
+                    config.getLong("HTTP_CONNECT_TIMEOUT_MS", 3000),
+                    config.getLong("HTTP_TIMEOUT_MS", 10000),
+                    TransportConfig.parseEndpointTimeouts(config.getString("HTTP_ENDPOINT_TIMEOUTS_MS", null)),
+                    config.getBoolean("HTTP_HEDGING", false),
+                    config.getInt("API_DAILY_QUOTA", 100),
+                    config.getDouble("HEDGE_QUOTA_SHARE", 0.05),
+                    config.getInt("HTTP_MAX_PARALLEL_REQUESTS", TransportConfig.DEFAULT_MAX_PARALLEL_REQUESTS));
+            TrafficArchive archive = openTrafficArchive(config, apiMode);
+            NBAApiClient nbaApi = new NBAApiClient(apiKey != null ? apiKey : "", apiBaseUrl, transport, archive);
 
-            System.out.println("Registrazione bot Telegram...");
-            NBABot bot = new NBABot(botToken, nbaApi, database);
+            PlayerPrefetcher prefetcher = new PlayerPrefetcher(
+                    nbaApi,
+                    database,
+                    config.getInt("PREFETCH_TOP_PLAYERS", 20),
+                    config.getInt("API_DAILY_QUOTA", 100),
+                    config.getDouble("PREFETCH_QUOTA_SHARE", 0.2),
+                    config.getInt("PREFETCH_START_HOUR", 4),
+                    config.getInt("PREFETCH_END_HOUR", 7));
+            prefetcher.start();
+
+            GameScheduleSync gameSchedule = new GameScheduleSync(
+                    nbaApi,
+                    database,
+                    ZoneId.of(config.getString("GAMES_TIMEZONE", "Europe/Rome")),
+                    config.getLong("GAMES_SYNC_INTERVAL_MINUTES", 180),
+                    config.getLong("GAMES_LIVE_SYNC_INTERVAL_MINUTES", 10),
+                    config.getInt("API_DAILY_QUOTA", 100));
+            gameSchedule.start();
 
-            try (TelegramBotsLongPollingApplication botsApplication = new TelegramBotsLongPollingApplication()) {
-                botsApplication.registerBot(botToken, bot);
+            Leaderboard leaderboard = new Leaderboard(
+                    database,
+                    NBAApiClient.CURRENT_SEASON,
+                    config.getInt("LEADERS_MIN_GAMES", 20));
+            nbaApi.addStatisticsListener(leaderboard);
 
-                System.out.println("NbaBot avviato con successo!");
-                System.out.println("Premi CTRL+C per fermare il bot");
+            System.out.println("Registrazione bot Telegram...");
+            NBABot bot = new NBABot(botToken, nbaApi, database, gameSchedule, leaderboard);
+            UpdateDispatcher dispatcher = new UpdateDispatcher(
+                    bot,
+                    config.getInt("RATE_LIMIT_PER_MINUTE", 20),
+                    config.getInt("RATE_LIMIT_BURST", 5),
+                    config.getInt("QUEUE_SHED_THRESHOLD", 50));
 
-                Thread.currentThread().join();
+            if (config.getString("BOT_MODE", "polling").equalsIgnoreCase("webhook")) {
+                startWebhook(config, botToken, dispatcher);
+            } else {
+                startLongPolling(botToken, dispatcher);
             }
 
         } catch (Exception e) {
@@ -58,4 +115,63 @@ public class Main {
             System.exit(1);
         }
     }
+
+    private static TrafficArchive openTrafficArchive(Configuration config, String apiMode) throws IOException {
+        String path = config.getString("API_ARCHIVE_PATH", "nbabot-traffic.gz");
+        switch (apiMode) {
+            case "record" -> {
+                TrafficArchive archive = TrafficArchive.recording(path);
+                Runtime.getRuntime().addShutdownHook(new Thread(archive::close));
+                System.out.println("Registrazione traffico API in " + path);
+                return archive;
+            }
+            case "replay" -> {
+                boolean realTiming = config.getString("API_REPLAY_TIMING", "original").equalsIgnoreCase("original");
+                System.out.println("Replay traffico API da " + path + (realTiming ? " con latenze originali" : " senza attese"));
+                return TrafficArchive.replaying(path, realTiming);
+            }
+            default -> {
+                return null;
+            }
+        }
+    }
+
+    private static void startLongPolling(String botToken, UpdateDispatcher dispatcher) throws Exception {
+        try (TelegramBotsLongPollingApplication botsApplication = new TelegramBotsLongPollingApplication()) {
+            botsApplication.registerBot(botToken, dispatcher);
+
+            System.out.println("NbaBot avviato con successo!");
+            System.out.println("Premi CTRL+C per fermare il bot");
+
+            Thread.currentThread().join();
+        }
+    }
+
+    private static void startWebhook(Configuration config, String botToken, UpdateDispatcher dispatcher) throws Exception {
+        int port = config.getInt("WEBHOOK_PORT", 8080);
+        String path = config.getString("WEBHOOK_PATH", "/webhook");
+        String secret = config.getString("WEBHOOK_SECRET", null);
+        String publicUrl = config.getString("WEBHOOK_URL", null);
+        boolean hasPublicUrl = publicUrl != null && !publicUrl.isEmpty();
+        if (hasPublicUrl && (secret == null || secret.isEmpty())) {
+            throw new IllegalStateException("WEBHOOK_SECRET obbligatorio quando WEBHOOK_URL è impostato");
+        }
+
+        try (WebhookServer server = new WebhookServer(port, path, secret, dispatcher)) {
+            server.start();
+
+            // Senza URL pubblico il server resta utilizzabile in locale inviando update via POST
+            if (hasPublicUrl) {
+                new OkHttpTelegramClient(botToken).execute(SetWebhook.builder()
+                        .url(publicUrl)
+                        .secretToken(secret)
+                        .build());
+            }
+
+            System.out.println("NbaBot avviato in modalità webhook sulla porta " + port + path);
+            System.out.println("Premi CTRL+C per fermare il bot");
+
+            Thread.currentThread().join();
+        }
+    }
 }
\ No newline at end of file
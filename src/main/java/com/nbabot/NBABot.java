@@ -3,14 +3,22 @@ package com.nbabot;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.nbabot.api.GameScheduleSync;
 import com.nbabot.api.NBAApiClient;
-import com.nbabot.database.DatabaseManager;
+import com.nbabot.database.FavoriteRepository;
+import com.nbabot.database.GameRepository;
+import com.nbabot.database.StatisticsRepository;
+import com.nbabot.database.Storage;
+import com.nbabot.database.TrendingSearches;
 import org.telegram.telegrambots.client.okhttp.OkHttpTelegramClient;
 import org.telegram.telegrambots.longpolling.util.LongPollingSingleThreadUpdateConsumer;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
 import org.telegram.telegrambots.meta.api.methods.send.SendPhoto;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageText;
 import org.telegram.telegrambots.meta.api.objects.InputFile;
 import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.api.objects.message.Message;
+import org.telegram.telegrambots.meta.api.objects.photo.PhotoSize;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.ReplyKeyboardMarkup;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
@@ -19,21 +27,41 @@ import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.Keyboard
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 import org.telegram.telegrambots.meta.generics.TelegramClient;
 
+import java.time.Instant;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class NBABot implements LongPollingSingleThreadUpdateConsumer {
+    private static final Set<String> MENU_LABELS = Set.of(
+            "Cerca giocatori", "Cerca squadre", "Partite oggi", "Partite live",
+            "Preferiti", "Statistiche utente", "Aiuto");
+
     private final TelegramClient telegramClient;
     private final NBAApiClient nbaApi;
-    private final DatabaseManager database;
+    private final Storage database;
+    private final GameScheduleSync gameSchedule;
+    private final Leaderboard leaderboard;
     private final Map<Long, UserSession> userSessions;
+    private final Map<Integer, CachedRoster> rosterCache;
+    private final SearchResultPages resultPages;
 
-    public NBABot(String botToken, NBAApiClient nbaApi, DatabaseManager database) {
+    public NBABot(String botToken, NBAApiClient nbaApi, Storage database, GameScheduleSync gameSchedule,
+                  Leaderboard leaderboard) {
         this.telegramClient = new OkHttpTelegramClient(botToken);
         this.nbaApi = nbaApi;
         this.database = database;
+        this.gameSchedule = gameSchedule;
+        this.leaderboard = leaderboard;
         this.userSessions = new HashMap<>();
+        this.rosterCache = new HashMap<>();
+        this.resultPages = new SearchResultPages();
     }
 
     @Override
@@ -45,6 +73,14 @@ public class NBABot implements LongPollingSingleThreadUpdateConsumer {
         }
     }
 
+    static boolean isMenuCommand(String text) {
+        return text.startsWith("/") || MENU_LABELS.contains(text);
+    }
+
+    void sendNotice(long chatId, String text) {
+        sendMessage(chatId, text);
+    }
+
     private void handleTextMessage(Update update) {
         long chatId = update.getMessage().getChatId();
         long userId = update.getMessage().getFrom().getId();
@@ -75,6 +111,11 @@ public class NBABot implements LongPollingSingleThreadUpdateConsumer {
             case "/stats" -> showUserStatistics(chatId, userId);
             case "/live" -> showLiveGames(chatId, userId);
             case "/today" -> showTodayGames(chatId, userId);
+            case "/tomorrow" -> showTomorrowGames(chatId);
+            case "/date" -> showGamesByDate(chatId, command);
+            case "/trending" -> showTrending(chatId);
+            case "/compare" -> comparePlayers(chatId, command);
+            case "/leaders" -> showLeaders(chatId);
             default -> sendMessage(chatId, "Comando non riconosciuto. Usa /help per la lista comandi.");
         }
     }
@@ -118,7 +159,12 @@ public class NBABot implements LongPollingSingleThreadUpdateConsumer {
             /player - Cerca un giocatore
             /team - Cerca una squadra
             /today - Partite di oggi
+            /tomorrow - Partite di domani
+            /date AAAA-MM-GG - Partite in una data
             /live - Risultati in tempo reale
+            /trending - Ricerche più popolari
+            /compare cognome1 cognome2 - Confronta due giocatori
+            /leaders - Migliori medie della stagione
             /favorites - Mostra i tuoi preferiti
             /stats - Le tue statistiche di utilizzo
             /help - Mostra questo messaggio
@@ -186,10 +232,18 @@ public class NBABot implements LongPollingSingleThreadUpdateConsumer {
     }
 
     private void showPlayerResults(long chatId, long userId, JsonArray players) {
+        if (players.size() == 1) {
+            sendPlayerInfo(chatId, userId, players.get(0).getAsJsonObject(), false);
+            return;
+        }
+
+        List<SearchResultPages.Result> results = new ArrayList<>();
         for (int i = 0; i < players.size(); i++) {
             JsonObject player = players.get(i).getAsJsonObject();
-            sendPlayerInfo(chatId, userId, player, false);
+            results.add(new SearchResultPages.Result(player.get("id").getAsInt(),
+                    player.get("firstname").getAsString() + " " + player.get("lastname").getAsString()));
         }
+        sendResultPage(chatId, resultPages.put(chatId, "player", results));
     }
 
     private void sendPlayerInfo(long chatId, long userId, JsonObject player, boolean detailed) {
@@ -217,8 +271,12 @@ public class NBABot implements LongPollingSingleThreadUpdateConsumer {
         InlineKeyboardMarkup keyboard = InlineKeyboardMarkup.builder()
                 .keyboardRow(new InlineKeyboardRow(
                         InlineKeyboardButton.builder()
-                                .text("Statistiche 2024")
-                                .callbackData("player_stats_" + playerId + "_2024")
+                                .text("Statistiche " + NBAApiClient.CURRENT_SEASON)
+                                .callbackData("player_stats_" + playerId + "_" + NBAApiClient.CURRENT_SEASON)
+                                .build(),
+                        InlineKeyboardButton.builder()
+                                .text("Carriera")
+                                .callbackData("career_" + playerId)
                                 .build(),
                         InlineKeyboardButton.builder()
                                 .text("Salva preferito")
@@ -253,9 +311,100 @@ public class NBABot implements LongPollingSingleThreadUpdateConsumer {
     }
 
     private void showTeamResults(long chatId, long userId, JsonArray teams) {
+        if (teams.size() == 1) {
+            sendTeamInfo(chatId, userId, teams.get(0).getAsJsonObject());
+            return;
+        }
+
+        List<SearchResultPages.Result> results = new ArrayList<>();
         for (JsonElement teamElement : teams) {
-            sendTeamInfo(chatId, userId, teamElement.getAsJsonObject());
+            JsonObject team = teamElement.getAsJsonObject();
+            results.add(new SearchResultPages.Result(team.get("id").getAsInt(), team.get("name").getAsString()));
         }
+        sendResultPage(chatId, resultPages.put(chatId, "team", results));
+    }
+
+    private void sendResultPage(long chatId, int token) {
+        SearchResultPages.ResultSet resultSet = resultPages.get(chatId, token);
+        sendMessage(SendMessage.builder()
+                .chatId(chatId)
+                .text(formatResultPage(resultSet, 0))
+                .replyMarkup(createResultPageKeyboard(token, resultSet, 0))
+                .build());
+    }
+
+    private void showResultPage(long chatId, int messageId, int token, int page) {
+        SearchResultPages.ResultSet resultSet = resultPages.get(chatId, token);
+        if (resultSet == null || !resultSet.hasPage(page)) {
+            sendMessage(chatId, "Ricerca scaduta. Ripeti la ricerca.");
+            return;
+        }
+
+        try {
+            telegramClient.execute(EditMessageText.builder()
+                    .chatId(chatId)
+                    .messageId(messageId)
+                    .text(formatResultPage(resultSet, page))
+                    .replyMarkup(createResultPageKeyboard(token, resultSet, page))
+                    .build());
+        } catch (TelegramApiException e) {
+            System.err.println("Errore modifica messaggio: " + e.getMessage());
+        }
+    }
+
+    private void handlePickResult(long chatId, long userId, int token, int index) {
+        SearchResultPages.ResultSet resultSet = resultPages.get(chatId, token);
+        if (resultSet == null || index < 0 || index >= resultSet.results().size()) {
+            sendMessage(chatId, "Ricerca scaduta. Ripeti la ricerca.");
+            return;
+        }
+        showItemDetails(chatId, userId, resultSet.type(), resultSet.results().get(index).id());
+    }
+
+    private String formatResultPage(SearchResultPages.ResultSet resultSet, int page) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(resultSet.type().equals("player") ? "GIOCATORI TROVATI" : "SQUADRE TROVATE")
+                .append(" (").append(resultSet.results().size()).append(")")
+                .append(" - pagina ").append(page + 1).append("/").append(resultSet.pageCount()).append("\n\n");
+
+        int first = page * SearchResultPages.PAGE_SIZE;
+        List<SearchResultPages.Result> results = resultSet.page(page);
+        for (int i = 0; i < results.size(); i++) {
+            sb.append(first + i + 1).append(". ").append(results.get(i).label()).append("\n");
+        }
+        sb.append("\nSeleziona un numero per i dettagli.");
+        return sb.toString();
+    }
+
+    private InlineKeyboardMarkup createResultPageKeyboard(int token, SearchResultPages.ResultSet resultSet, int page) {
+        int first = page * SearchResultPages.PAGE_SIZE;
+        InlineKeyboardRow numbers = new InlineKeyboardRow();
+        for (int i = 0; i < resultSet.page(page).size(); i++) {
+            numbers.add(InlineKeyboardButton.builder()
+                    .text(String.valueOf(first + i + 1))
+                    .callbackData("pick_" + token + "_" + (first + i))
+                    .build());
+        }
+
+        InlineKeyboardRow navigation = new InlineKeyboardRow();
+        if (page > 0) {
+            navigation.add(InlineKeyboardButton.builder()
+                    .text("« Precedente")
+                    .callbackData("page_" + token + "_" + (page - 1))
+                    .build());
+        }
+        if (page < resultSet.pageCount() - 1) {
+            navigation.add(InlineKeyboardButton.builder()
+                    .text("Successiva »")
+                    .callbackData("page_" + token + "_" + (page + 1))
+                    .build());
+        }
+
+        InlineKeyboardMarkup.InlineKeyboardMarkupBuilder<?, ?> keyboard = InlineKeyboardMarkup.builder().keyboardRow(numbers);
+        if (!navigation.isEmpty()) {
+            keyboard.keyboardRow(navigation);
+        }
+        return keyboard.build();
     }
 
     private void sendTeamInfo(long chatId, long userId, JsonObject team) {
@@ -286,6 +435,10 @@ public class NBABot implements LongPollingSingleThreadUpdateConsumer {
 
         InlineKeyboardMarkup keyboard = InlineKeyboardMarkup.builder()
                 .keyboardRow(new InlineKeyboardRow(
+                        InlineKeyboardButton.builder()
+                                .text("Rosa")
+                                .callbackData("roster_" + teamId)
+                                .build(),
                         InlineKeyboardButton.builder()
                                 .text("Salva preferito")
                                 .callbackData("save_team_" + teamId)
@@ -294,14 +447,7 @@ public class NBABot implements LongPollingSingleThreadUpdateConsumer {
                 .build();
 
         if (logo != null && !logo.isEmpty()) {
-            try {
-                telegramClient.execute(SendPhoto.builder()
-                        .chatId(chatId)
-                        .photo(new InputFile(logo))
-                        .caption(info.toString())
-                        .replyMarkup(keyboard)
-                        .build());
-            } catch (TelegramApiException e) {
+            if (!sendTeamLogo(chatId, teamId, logo, info.toString(), keyboard)) {
                 sendMessage(SendMessage.builder().chatId(chatId).text(info.toString()).replyMarkup(keyboard).build());
             }
         } else {
@@ -309,61 +455,114 @@ public class NBABot implements LongPollingSingleThreadUpdateConsumer {
         }
     }
 
-    private void showTodayGames(long chatId, long userId) {
-        sendMessage(chatId, "Caricamento partite di oggi...");
+    private boolean sendTeamLogo(long chatId, int teamId, String logo, String caption, InlineKeyboardMarkup keyboard) {
+        // Riusa il file_id già caricato su Telegram invece di fargli riscaricare l'URL
+        String fileId = database.getTeamLogoFileId(teamId, logo);
+        if (fileId != null) {
+            try {
+                telegramClient.execute(buildTeamPhoto(chatId, new InputFile(fileId), caption, keyboard));
+                return true;
+            } catch (TelegramApiException e) {
+                database.removeTeamLogoFileId(teamId);
+            }
+        }
+
+        try {
+            Message sent = telegramClient.execute(buildTeamPhoto(chatId, new InputFile(logo), caption, keyboard));
+            if (sent != null && sent.hasPhoto()) {
+                List<PhotoSize> sizes = sent.getPhoto();
+                database.saveTeamLogoFileId(teamId, logo, sizes.get(sizes.size() - 1).getFileId());
+            }
+            return true;
+        } catch (TelegramApiException e) {
+            return false;
+        }
+    }
+
+    private SendPhoto buildTeamPhoto(long chatId, InputFile photo, String caption, InlineKeyboardMarkup keyboard) {
+        return SendPhoto.builder()
+                .chatId(chatId)
+                .photo(photo)
+                .caption(caption)
+                .replyMarkup(keyboard)
+                .build();
+    }
 
-        LocalDate today = LocalDate.now();
-        String dateStr = today.format(DateTimeFormatter.ofPattern("yyyy-MM-dd"));
+    private void showTodayGames(long chatId, long userId) {
+        showGames(chatId, LocalDate.now(gameSchedule.getZone()), "PARTITE DI OGGI", "oggi");
+    }
 
-        JsonObject response = nbaApi.getGames(dateStr);
+    private void showTomorrowGames(long chatId) {
+        showGames(chatId, LocalDate.now(gameSchedule.getZone()).plusDays(1), "PARTITE DI DOMANI", "domani");
+    }
 
-        if (response == null || !response.has("response")) {
-            sendMessage(chatId, "Impossibile recuperare i dati delle partite.");
+    private void showGamesByDate(long chatId, String command) {
+        String[] args = command.trim().split("\\s+");
+        LocalDate day;
+        try {
+            day = LocalDate.parse(args.length == 2 ? args[1] : "");
+        } catch (DateTimeParseException e) {
+            sendMessage(chatId, "Uso: /date AAAA-MM-GG");
             return;
         }
+        LocalDate first = LocalDate.of(NBAApiClient.FIRST_SEASON, 10, 1);
+        LocalDate last = LocalDate.now(gameSchedule.getZone()).plusYears(1);
+        if (day.isBefore(first) || day.isAfter(last)) {
+            sendMessage(chatId, "Date disponibili dal " + first.format(DateTimeFormatter.ofPattern("dd/MM/yyyy"))
+                    + " a un anno da oggi.");
+            return;
+        }
+        showGames(chatId, day, "PARTITE", "in questa data");
+    }
 
-        JsonArray games = response.getAsJsonArray("response");
-        if (games.size() == 0) {
-            sendMessage(chatId, "Nessuna partita in programma oggi.");
+    private void showGames(long chatId, LocalDate day, String title, String when) {
+        List<GameRepository.Game> games = gameSchedule.getGames(day);
+        if (games == null) {
+            sendMessage(chatId, "Calendario non disponibile al momento. Riprova più tardi.");
+            return;
+        }
+        if (games.isEmpty()) {
+            sendMessage(chatId, "Nessuna partita in programma " + when + ".");
             return;
         }
 
         StringBuilder sb = new StringBuilder();
-        sb.append("PARTITE DI OGGI - ").append(today.format(DateTimeFormatter.ofPattern("dd/MM/yyyy"))).append("\n\n");
+        sb.append(title).append(" - ").append(day.format(DateTimeFormatter.ofPattern("dd/MM/yyyy"))).append("\n\n");
 
-        for (JsonElement g : games) {
-            JsonObject game = g.getAsJsonObject();
-            String status = game.get("status").getAsJsonObject().get("short").getAsString();
-            String homeTeam = game.getAsJsonObject("teams").getAsJsonObject("home").get("name").getAsString();
-            String awayTeam = game.getAsJsonObject("teams").getAsJsonObject("visitors").get("name").getAsString();
+        DateTimeFormatter timeFormat = DateTimeFormatter.ofPattern("HH:mm").withZone(gameSchedule.getZone());
+        for (GameRepository.Game game : games) {
+            String status = game.status();
 
             String statusText = getStatusText(status);
             if (statusText != null) {
                 sb.append("[").append(statusText).append("] ");
             }
 
-            if (status.equals("NS")) {
-                String time = game.get("time").getAsString();
-                sb.append(time).append(" - ");
+            if (game.isNotStarted()) {
+                sb.append(timeFormat.format(Instant.ofEpochSecond(game.startEpochSecond()))).append(" - ");
             }
 
-            sb.append(homeTeam).append(" vs ").append(awayTeam);
+            sb.append(game.homeTeam()).append(" vs ").append(game.awayTeam());
 
-            if (!status.equals("NS")) {
-                int homeScore = game.getAsJsonObject("scores").getAsJsonObject("home").get("points").getAsInt();
-                int awayScore = game.getAsJsonObject("scores").getAsJsonObject("visitors").get("points").getAsInt();
-                sb.append(String.format("\n   %d - %d", homeScore, awayScore));
+            if (!game.isNotStarted() && game.homeScore() != null && game.awayScore() != null) {
+                sb.append(String.format("\n   %d - %d", game.homeScore(), game.awayScore()));
             }
 
             sb.append("\n\n");
         }
 
+        Instant lastSynced = gameSchedule.getLastSynced(day);
+        if (lastSynced != null) {
+            sb.append("Aggiornato alle ").append(timeFormat.format(lastSynced));
+        }
         sendMessage(chatId, sb.toString());
     }
 
     private String getStatusText(String status) {
         return switch (status) {
-            case "NS" -> "Da iniziare";
+            case "NS", "1" -> "Da iniziare";
+            case "2" -> "In corso";
+            case "3" -> "Terminata";
             case "Q1", "Q2", "Q3", "Q4", "OT", "BT", "HT" -> "In corso";
             case "FT", "AOT" -> "Terminata";
             case "POST" -> "Posticipata";
@@ -377,13 +576,18 @@ public class NBABot implements LongPollingSingleThreadUpdateConsumer {
         String callbackData = update.getCallbackQuery().getData();
         long chatId = update.getCallbackQuery().getMessage().getChatId();
         long userId = update.getCallbackQuery().getFrom().getId();
+        int messageId = update.getCallbackQuery().getMessage().getMessageId();
 
         String[] parts = callbackData.split("_");
         switch (parts[0]) {
+            case "page" -> showResultPage(chatId, messageId, Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+            case "pick" -> handlePickResult(chatId, userId, Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
             case "save" -> handleSaveFavorite(chatId, userId, parts);
             case "remove" -> handleRemoveFavorite(chatId, userId, parts);
             case "view" -> handleViewFavorite(chatId, userId, parts);
             case "player" -> showPlayerStats(chatId, userId, Integer.parseInt(parts[2]), Integer.parseInt(parts[3]));
+            case "career" -> showPlayerCareer(chatId, Integer.parseInt(parts[1]));
+            case "roster" -> showTeamRoster(chatId, Integer.parseInt(parts[1]));
         }
     }
 
@@ -415,7 +619,7 @@ public class NBABot implements LongPollingSingleThreadUpdateConsumer {
     }
 
     private void showFavorites(long chatId, long userId) {
-        List<DatabaseManager.Favorite> favorites = database.getFavorites(userId, null);
+        List<FavoriteRepository.Favorite> favorites = database.getFavorites(userId, null);
 
         if (favorites.isEmpty()) {
             sendMessage(chatId, "La tua lista preferiti è vuota.");
@@ -424,7 +628,7 @@ public class NBABot implements LongPollingSingleThreadUpdateConsumer {
 
         sendMessage(chatId, "I TUOI PREFERITI:");
 
-        for (DatabaseManager.Favorite fav : favorites) {
+        for (FavoriteRepository.Favorite fav : favorites) {
             String label = fav.type().equals("PLAYER") ? "[Giocatore]" : "[Squadra]";
             InlineKeyboardMarkup keyboard = InlineKeyboardMarkup.builder()
                     .keyboardRow(new InlineKeyboardRow(
@@ -448,13 +652,17 @@ public class NBABot implements LongPollingSingleThreadUpdateConsumer {
     }
 
     private void handleViewFavorite(long chatId, long userId, String[] parts) {
-        JsonObject response = parts[1].equals("player")
-                ? nbaApi.getPlayerById(Integer.parseInt(parts[2]))
-                : nbaApi.getTeamById(Integer.parseInt(parts[2]));
+        showItemDetails(chatId, userId, parts[1], Integer.parseInt(parts[2]));
+    }
+
+    private void showItemDetails(long chatId, long userId, String type, int itemId) {
+        JsonObject response = type.equals("player")
+                ? nbaApi.getPlayerById(itemId)
+                : nbaApi.getTeamById(itemId);
 
         if (response != null && response.has("response")) {
             JsonObject item = response.getAsJsonArray("response").get(0).getAsJsonObject();
-            if (parts[1].equals("player")) sendPlayerInfo(chatId, userId, item, true);
+            if (type.equals("player")) sendPlayerInfo(chatId, userId, item, true);
             else sendTeamInfo(chatId, userId, item);
         }
     }
@@ -468,16 +676,7 @@ public class NBABot implements LongPollingSingleThreadUpdateConsumer {
             return;
         }
 
-        JsonArray stats = response.getAsJsonArray("response");
-        double pts = 0, reb = 0, ast = 0;
-        int games = stats.size();
-
-        for (JsonElement e : stats) {
-            JsonObject s = e.getAsJsonObject();
-            pts += s.get("points").isJsonNull() ? 0 : s.get("points").getAsDouble();
-            reb += s.get("totReb").isJsonNull() ? 0 : s.get("totReb").getAsDouble();
-            ast += s.get("assists").isJsonNull() ? 0 : s.get("assists").getAsDouble();
-        }
+        SeasonAverages avg = SeasonAverages.of(response.getAsJsonArray("response"));
 
         String text = String.format("""
             STATISTICHE %d
@@ -486,13 +685,207 @@ public class NBABot implements LongPollingSingleThreadUpdateConsumer {
             Media Punti: %.1f
             Media Rimbalzi: %.1f
             Media Assist: %.1f
-            """, season, games, pts/games, reb/games, ast/games);
+            """, season, avg.games(), avg.points(), avg.rebounds(), avg.assists());
 
-        sendMessage(chatId, text);
+        sendMessage(chatId, text + staleNote(response));
+    }
+
+    private void showPlayerCareer(long chatId, int playerId) {
+        sendMessage(chatId, "Caricamento carriera...");
+        JsonObject profile = nbaApi.getPlayerById(playerId);
+        if (profile == null || !profile.has("response") || profile.getAsJsonArray("response").isEmpty()) {
+            sendMessage(chatId, "Giocatore non trovato.");
+            return;
+        }
+
+        JsonObject player = profile.getAsJsonArray("response").get(0).getAsJsonObject();
+        int firstSeason = NBAApiClient.FIRST_SEASON;
+        JsonObject nba = player.getAsJsonObject("nba");
+        if (nba != null && nba.has("start") && !nba.get("start").isJsonNull()) {
+            firstSeason = Math.max(firstSeason, nba.get("start").getAsInt());
+        }
+
+        // Tutte le stagioni in parallelo: la latenza è quella della richiesta più lenta
+        Map<Integer, CompletableFuture<JsonObject>> requests = new TreeMap<>();
+        for (int season = firstSeason; season <= NBAApiClient.CURRENT_SEASON; season++) {
+            requests.put(season, nbaApi.getPlayerStatisticsAsync(playerId, season));
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("CARRIERA: ").append(player.get("firstname").getAsString())
+                .append(" ").append(player.get("lastname").getAsString()).append("\n\n");
+        sb.append("Stagione | PG | PTS | RIM | AST\n");
+
+        List<JsonObject> shown = new ArrayList<>();
+        int seasons = 0;
+        for (Map.Entry<Integer, CompletableFuture<JsonObject>> request : requests.entrySet()) {
+            JsonObject response = request.getValue().join();
+            if (response == null || !response.has("response") || response.getAsJsonArray("response").isEmpty()) {
+                continue;
+            }
+            shown.add(response);
+            SeasonAverages avg = SeasonAverages.of(response.getAsJsonArray("response"));
+            sb.append(String.format("%d | %d | %.1f | %.1f | %.1f\n",
+                    request.getKey(), avg.games(), avg.points(), avg.rebounds(), avg.assists()));
+            seasons++;
+        }
+
+        if (seasons == 0) {
+            sendMessage(chatId, "Statistiche di carriera non disponibili.");
+            return;
+        }
+        sendMessage(chatId, sb + staleNote(shown.toArray(new JsonObject[0])));
+    }
+
+    private void comparePlayers(long chatId, String command) {
+        String[] args = command.trim().split("\\s+");
+        if (args.length != 3) {
+            sendMessage(chatId, "Uso: /compare cognome1 cognome2");
+            return;
+        }
+
+        sendMessage(chatId, "Confronto in corso...");
+        CompletableFuture<JsonObject> first = nbaApi.searchPlayersAsync(args[1]);
+        CompletableFuture<JsonObject> second = nbaApi.searchPlayersAsync(args[2]);
+        JsonObject playerA = firstHit(first.join());
+        JsonObject playerB = firstHit(second.join());
+        if (playerA == null || playerB == null) {
+            sendMessage(chatId, "Giocatore non trovato: " + (playerA == null ? args[1] : args[2]));
+            return;
+        }
+
+        int season = NBAApiClient.CURRENT_SEASON;
+        CompletableFuture<JsonObject> statsA = nbaApi.getPlayerStatisticsAsync(playerA.get("id").getAsInt(), season);
+        CompletableFuture<JsonObject> statsB = nbaApi.getPlayerStatisticsAsync(playerB.get("id").getAsInt(), season);
+        JsonObject responseA = statsA.join();
+        JsonObject responseB = statsB.join();
+        if (responseA == null || !responseA.has("response") || responseB == null || !responseB.has("response")) {
+            sendMessage(chatId, "Statistiche non disponibili per la stagione selezionata.");
+            return;
+        }
+
+        SeasonAverages a = SeasonAverages.of(responseA.getAsJsonArray("response"));
+        SeasonAverages b = SeasonAverages.of(responseB.getAsJsonArray("response"));
+        String nameA = playerA.get("firstname").getAsString() + " " + playerA.get("lastname").getAsString();
+        String nameB = playerB.get("firstname").getAsString() + " " + playerB.get("lastname").getAsString();
+
+        String text = String.format("""
+            CONFRONTO %d
+            
+            %s vs %s
+            
+            Partite giocate: %d | %d
+            Media Punti: %.1f | %.1f
+            Media Rimbalzi: %.1f | %.1f
+            Media Assist: %.1f | %.1f
+            """, season, nameA, nameB, a.games(), b.games(), a.points(), b.points(),
+                a.rebounds(), b.rebounds(), a.assists(), b.assists());
+
+        sendMessage(chatId, text + staleNote(responseA, responseB));
+    }
+
+    private JsonObject firstHit(JsonObject response) {
+        if (response == null || !response.has("response") || response.getAsJsonArray("response").isEmpty()) {
+            return null;
+        }
+        return response.getAsJsonArray("response").get(0).getAsJsonObject();
+    }
+
+    private void showTeamRoster(long chatId, int teamId) {
+        CachedRoster cached = rosterCache.get(teamId);
+        if (cached != null && cached.day().equals(LocalDate.now())) {
+            sendMessage(chatId, cached.text());
+            return;
+        }
+
+        int season = NBAApiClient.CURRENT_SEASON;
+        JsonObject response = nbaApi.getTeamPlayers(teamId, season);
+        if (response == null || !response.has("response") || response.getAsJsonArray("response").isEmpty()) {
+            sendMessage(chatId, "Rosa non disponibile.");
+            return;
+        }
+
+        JsonArray players = response.getAsJsonArray("response");
+        Message progress = sendAndGet(chatId, "ROSA " + season + "\n\nCaricamento 0/" + players.size() + "...");
+
+        // Fan-out delle statistiche: il pool dell'API client limita le richieste parallele
+        List<RosterRow> rows = Collections.synchronizedList(new ArrayList<>());
+        // La rosa va in cache solo se tutte le statistiche sono arrivate fresche
+        AtomicBoolean complete = new AtomicBoolean(!NBAApiClient.isStale(response));
+        List<CompletableFuture<Void>> requests = new ArrayList<>();
+        for (JsonElement p : players) {
+            JsonObject player = p.getAsJsonObject();
+            String name = player.get("firstname").getAsString() + " " + player.get("lastname").getAsString();
+            requests.add(nbaApi.getPlayerStatisticsAsync(player.get("id").getAsInt(), season)
+                    .thenAccept(stats -> {
+                        boolean valid = stats != null && stats.has("response");
+                        if (!valid || NBAApiClient.isStale(stats)) {
+                            complete.set(false);
+                        }
+                        rows.add(new RosterRow(name, valid
+                                ? SeasonAverages.of(stats.getAsJsonArray("response"))
+                                : SeasonAverages.of(new JsonArray())));
+                    }));
+        }
+
+        CompletableFuture<Void> all = CompletableFuture.allOf(requests.toArray(new CompletableFuture<?>[0]));
+        int shown = 0;
+        while (!all.isDone()) {
+            try {
+                all.get(1, TimeUnit.SECONDS);
+            } catch (TimeoutException e) {
+                // Aggiornamento periodico del messaggio con le righe già pronte
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                complete.set(false);
+                break;
+            } catch (ExecutionException e) {
+                complete.set(false);
+                break;
+            }
+            if (progress != null && !all.isDone() && rows.size() > shown) {
+                shown = rows.size();
+                editMessage(chatId, progress.getMessageId(), formatRoster(season, rows, players.size()));
+            }
+        }
+
+        String text = formatRoster(season, rows, players.size());
+        if (complete.get() && rows.size() == players.size()) {
+            rosterCache.put(teamId, new CachedRoster(LocalDate.now(), text));
+        }
+        if (progress != null) {
+            editMessage(chatId, progress.getMessageId(), text);
+        } else {
+            sendMessage(chatId, text);
+        }
+    }
+
+    private String formatRoster(int season, List<RosterRow> rows, int total) {
+        List<RosterRow> sorted;
+        synchronized (rows) {
+            sorted = new ArrayList<>(rows);
+        }
+        sorted.sort(Comparator.comparingDouble((RosterRow r) -> r.averages().points()).reversed());
+
+        StringBuilder sb = new StringBuilder("ROSA " + season + "\n");
+        if (sorted.size() < total) {
+            sb.append("Caricamento ").append(sorted.size()).append("/").append(total).append("...\n");
+        }
+        sb.append("\nGiocatore | PG | PTS | RIM | AST\n");
+        for (RosterRow row : sorted) {
+            SeasonAverages avg = row.averages();
+            if (avg.games() == 0) {
+                sb.append(row.name()).append(" | -\n");
+            } else {
+                sb.append(String.format("%s | %d | %.1f | %.1f | %.1f\n",
+                        row.name(), avg.games(), avg.points(), avg.rebounds(), avg.assists()));
+            }
+        }
+        return sb.toString();
     }
 
     private void showUserStatistics(long chatId, long userId) {
-        DatabaseManager.UserStatistics stats = database.getUserStatistics(userId);
+        StatisticsRepository.UserStatistics stats = database.getUserStatistics(userId);
         if (stats == null) {
             sendMessage(chatId, "Errore nel recupero dati utente.");
             return;
@@ -511,6 +904,50 @@ public class NBABot implements LongPollingSingleThreadUpdateConsumer {
         sendMessage(chatId, text);
     }
 
+    private void showTrending(long chatId) {
+        StringBuilder sb = new StringBuilder("RICERCHE DI TENDENZA\n");
+        appendTrending(sb, "Ultima ora", database.getTrendingSearches(TrendingSearches.Period.HOUR, 5));
+        appendTrending(sb, "Ultime 24 ore", database.getTrendingSearches(TrendingSearches.Period.DAY, 5));
+        sendMessage(chatId, sb.toString());
+    }
+
+    private void appendTrending(StringBuilder sb, String title, List<TrendingSearches.Entry> entries) {
+        sb.append("\n").append(title).append(":\n");
+        if (entries.isEmpty()) {
+            sb.append("Nessuna ricerca recente.\n");
+            return;
+        }
+        for (int i = 0; i < entries.size(); i++) {
+            TrendingSearches.Entry entry = entries.get(i);
+            String label = entry.type().equals("player") ? "[Giocatore]" : "[Squadra]";
+            sb.append(i + 1).append(". ").append(label).append(" ").append(entry.query()).append("\n");
+        }
+    }
+
+    private void showLeaders(long chatId) {
+        Map<Leaderboard.Category, List<Leaderboard.Leader>> leaders = leaderboard.getLeaders();
+        StringBuilder sb = new StringBuilder("LEADER DELLA STAGIONE\n");
+        appendLeaders(sb, "Punti a partita", leaders.get(Leaderboard.Category.POINTS));
+        appendLeaders(sb, "Rimbalzi a partita", leaders.get(Leaderboard.Category.REBOUNDS));
+        appendLeaders(sb, "Assist a partita", leaders.get(Leaderboard.Category.ASSISTS));
+        sb.append("\nGiocatori con almeno ").append(leaderboard.getMinGames())
+                .append(" partite tra quelli già consultati.");
+        sendMessage(chatId, sb.toString());
+    }
+
+    private void appendLeaders(StringBuilder sb, String title, List<Leaderboard.Leader> leaders) {
+        sb.append("\n").append(title).append(":\n");
+        if (leaders.isEmpty()) {
+            sb.append("Dati non ancora disponibili.\n");
+            return;
+        }
+        for (int i = 0; i < leaders.size(); i++) {
+            Leaderboard.Leader leader = leaders.get(i);
+            sb.append(String.format("%d. %s - %.1f (%d partite)\n",
+                    i + 1, leader.name(), leader.perGame(), leader.games()));
+        }
+    }
+
     private void showLiveGames(long chatId, long userId) {
         sendMessage(chatId, "Verifica partite in corso...");
         JsonObject response = nbaApi.getLiveGames();
@@ -542,13 +979,41 @@ public class NBABot implements LongPollingSingleThreadUpdateConsumer {
                     awayScore,
                     awayTeam));
         }
-        sendMessage(chatId, sb.toString());
+        sendMessage(chatId, sb + staleNote(response));
+    }
+
+    private String staleNote(JsonObject... responses) {
+        boolean stale = false;
+        for (JsonObject response : responses) {
+            if (NBAApiClient.isUnreachable(response)) {
+                return "\n(Servizio NBA non raggiungibile: dati dell'ultimo aggiornamento disponibile)";
+            }
+            stale |= NBAApiClient.isStale(response);
+        }
+        return stale ? "\n(Dati in aggiornamento)" : "";
     }
 
     private void sendMessage(long chatId, String text) {
         sendMessage(SendMessage.builder().chatId(chatId).text(text).build());
     }
 
+    private Message sendAndGet(long chatId, String text) {
+        try {
+            return telegramClient.execute(SendMessage.builder().chatId(chatId).text(text).build());
+        } catch (TelegramApiException e) {
+            System.err.println("Errore invio: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void editMessage(long chatId, int messageId, String text) {
+        try {
+            telegramClient.execute(EditMessageText.builder().chatId(chatId).messageId(messageId).text(text).build());
+        } catch (TelegramApiException e) {
+            System.err.println("Errore modifica messaggio: " + e.getMessage());
+        }
+    }
+
     private void sendMessage(SendMessage message) {
         try {
             telegramClient.execute(message);
@@ -557,6 +1022,28 @@ public class NBABot implements LongPollingSingleThreadUpdateConsumer {
         }
     }
 
+    private record RosterRow(String name, SeasonAverages averages) {}
+
+    private record CachedRoster(LocalDate day, String text) {}
+
+    private record SeasonAverages(int games, double points, double rebounds, double assists) {
+        static SeasonAverages of(JsonArray stats) {
+            double pts = 0, reb = 0, ast = 0;
+            int games = stats.size();
+
+            for (JsonElement e : stats) {
+                JsonObject s = e.getAsJsonObject();
+                pts += s.get("points").isJsonNull() ? 0 : s.get("points").getAsDouble();
+                reb += s.get("totReb").isJsonNull() ? 0 : s.get("totReb").getAsDouble();
+                ast += s.get("assists").isJsonNull() ? 0 : s.get("assists").getAsDouble();
+            }
+
+            return games == 0
+                    ? new SeasonAverages(0, 0, 0, 0)
+                    : new SeasonAverages(games, pts / games, reb / games, ast / games);
+        }
+    }
+
     private static class UserSession {
         String state;
         UserSession(String state) { this.state = state; }
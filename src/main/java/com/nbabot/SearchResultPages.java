@@ -0,0 +1,54 @@
+package com.nbabot;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Risultati delle ricerche conservati lato server, così una ricerca diventa un solo
+ * messaggio navigabile a pagine. Per ogni risultato restano solo id ed etichetta.
+ */
+class SearchResultPages {
+    static final int PAGE_SIZE = 5;
+    private static final int MAX_QUERIES = 500;
+
+    record Result(int id, String label) {}
+
+    record ResultSet(long chatId, String type, List<Result> results) {
+        int pageCount() {
+            return (results.size() + PAGE_SIZE - 1) / PAGE_SIZE;
+        }
+
+        boolean hasPage(int page) {
+            return page >= 0 && page < pageCount();
+        }
+
+        List<Result> page(int page) {
+            int from = page * PAGE_SIZE;
+            return results.subList(from, Math.min(from + PAGE_SIZE, results.size()));
+        }
+    }
+
+    private final Map<Integer, ResultSet> store = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, ResultSet> eldest) {
+            return size() > MAX_QUERIES;
+        }
+    };
+
+    synchronized int put(long chatId, String type, List<Result> results) {
+        // Token casuali: dopo un riavvio i pulsanti dei vecchi messaggi non puntano a ricerche nuove
+        int token;
+        do {
+            token = ThreadLocalRandom.current().nextInt(Integer.MAX_VALUE);
+        } while (store.containsKey(token));
+        store.put(token, new ResultSet(chatId, type, List.copyOf(results)));
+        return token;
+    }
+
+    synchronized ResultSet get(long chatId, int token) {
+        ResultSet resultSet = store.get(token);
+        return resultSet != null && resultSet.chatId() == chatId ? resultSet : null;
+    }
+}
@@ -0,0 +1,201 @@
+package com.nbabot;
+
+import org.telegram.telegrambots.longpolling.util.LongPollingSingleThreadUpdateConsumer;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Controllo di ammissione davanti a {@link NBABot}: un token bucket per utente e una coda
+ * a priorità. Pulsanti e comandi del menu passano davanti alle ricerche testuali; quando
+ * la coda supera la soglia le richieste meno importanti vengono scartate.
+ * La priorità ordina gli utenti, non i singoli update: quelli dello stesso utente restano in ordine.
+ */
+public class UpdateDispatcher implements LongPollingSingleThreadUpdateConsumer {
+    enum Priority { CALLBACK, COMMAND, SEARCH }
+
+    private record QueuedUpdate(long userId, Update update, Priority priority, long sequence) {}
+
+    private static final int MAX_TRACKED_USERS = 10_000;
+    private static final long NOTICE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private static final int MAX_PENDING_NOTICES = 100;
+
+    private final NBABot bot;
+    private final long emissionIntervalNanos;
+    private final long burstToleranceNanos;
+    private final int shedThreshold;
+    // Theoretical arrival time per utente (GCRA): equivale a un token bucket aggiornato con un solo CAS
+    private final Map<Long, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private final Map<Long, AtomicLong> lastNotice = new ConcurrentHashMap<>();
+    // Contiene solo il primo update in attesa di ogni utente, gli altri restano in pendingByUser
+    private final PriorityBlockingQueue<QueuedUpdate> queue;
+    private final Map<Long, Deque<QueuedUpdate>> pendingByUser = new HashMap<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicLong sequence = new AtomicLong();
+    // Gli avvisi chiamano Telegram: fuori dal thread che riceve gli update, per non rallentare l'ammissione
+    private final ExecutorService noticeExecutor = new ThreadPoolExecutor(1, 2, 30, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(MAX_PENDING_NOTICES), r -> {
+                Thread t = new Thread(r, "update-notice");
+                t.setDaemon(true);
+                return t;
+            }, new ThreadPoolExecutor.DiscardPolicy());
+
+    public UpdateDispatcher(NBABot bot, int requestsPerMinute, int burst, int shedThreshold) {
+        this.bot = bot;
+        this.emissionIntervalNanos = TimeUnit.MINUTES.toNanos(1) / requestsPerMinute;
+        this.burstToleranceNanos = emissionIntervalNanos * (burst - 1);
+        this.shedThreshold = shedThreshold;
+        this.queue = new PriorityBlockingQueue<>(64, Comparator
+                .comparing(QueuedUpdate::priority)
+                .thenComparingLong(QueuedUpdate::sequence));
+
+        Thread worker = new Thread(this::processQueue, "update-worker");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    @Override
+    public void consume(Update update) {
+        Long userId = userOf(update);
+        Long chatId = chatOf(update);
+        if (userId == null || chatId == null) {
+            return;
+        }
+
+        if (!tryAcquire(userId)) {
+            notifyOnce(userId, chatId, "Stai inviando troppe richieste. Attendi qualche secondo e riprova.");
+            return;
+        }
+
+        Priority priority = classify(update);
+        int waiting = pending.get();
+        boolean shed = switch (priority) {
+            case SEARCH -> waiting >= shedThreshold;
+            case COMMAND -> waiting >= shedThreshold * 2;
+            case CALLBACK -> false;
+        };
+        if (shed) {
+            notifyOnce(userId, chatId, "Il bot è molto carico in questo momento. Riprova tra poco.");
+            return;
+        }
+
+        enqueue(new QueuedUpdate(userId, update, priority, sequence.getAndIncrement()));
+    }
+
+    private void enqueue(QueuedUpdate item) {
+        pending.incrementAndGet();
+        synchronized (pendingByUser) {
+            Deque<QueuedUpdate> userQueue = pendingByUser.computeIfAbsent(item.userId(), k -> new ArrayDeque<>());
+            userQueue.add(item);
+            if (userQueue.size() == 1) {
+                queue.add(item);
+            }
+        }
+    }
+
+    private void complete(QueuedUpdate item) {
+        pending.decrementAndGet();
+        synchronized (pendingByUser) {
+            Deque<QueuedUpdate> userQueue = pendingByUser.get(item.userId());
+            userQueue.poll();
+            if (userQueue.isEmpty()) {
+                pendingByUser.remove(item.userId());
+            } else {
+                // Il successivo update dell'utente entra in coda con la propria priorità
+                queue.add(userQueue.peek());
+            }
+        }
+    }
+
+    private boolean tryAcquire(long userId) {
+        if (buckets.size() > MAX_TRACKED_USERS) {
+            long now = System.nanoTime();
+            buckets.values().removeIf(tat -> tat.get() < now);
+        }
+
+        AtomicLong tat = buckets.computeIfAbsent(userId, k -> new AtomicLong(System.nanoTime()));
+        while (true) {
+            long now = System.nanoTime();
+            long current = tat.get();
+            long next = Math.max(current, now) + emissionIntervalNanos;
+            if (next - now > burstToleranceNanos + emissionIntervalNanos) {
+                return false;
+            }
+            if (tat.compareAndSet(current, next)) {
+                return true;
+            }
+        }
+    }
+
+    private void notifyOnce(long userId, long chatId, String text) {
+        // Un solo avviso per intervallo: la risposta al flood non deve diventare essa stessa un flood
+        long now = System.nanoTime();
+        if (lastNotice.size() > MAX_TRACKED_USERS) {
+            lastNotice.values().removeIf(last -> now - last.get() >= NOTICE_INTERVAL_NANOS);
+        }
+        AtomicLong last = lastNotice.computeIfAbsent(userId, k -> new AtomicLong(now - TimeUnit.MINUTES.toNanos(1)));
+        long previous = last.get();
+        if (now - previous >= NOTICE_INTERVAL_NANOS && last.compareAndSet(previous, now)) {
+            noticeExecutor.execute(() -> bot.sendNotice(chatId, text));
+        }
+    }
+
+    private Priority classify(Update update) {
+        if (update.hasCallbackQuery()) {
+            return Priority.CALLBACK;
+        }
+        return NBABot.isMenuCommand(update.getMessage().getText()) ? Priority.COMMAND : Priority.SEARCH;
+    }
+
+    private Long userOf(Update update) {
+        if (update.hasMessage() && update.getMessage().hasText()) {
+            return update.getMessage().getFrom().getId();
+        }
+        if (update.hasCallbackQuery()) {
+            return update.getCallbackQuery().getFrom().getId();
+        }
+        return null;
+    }
+
+    private Long chatOf(Update update) {
+        if (update.hasMessage() && update.getMessage().hasText()) {
+            return update.getMessage().getChatId();
+        }
+        if (update.hasCallbackQuery()) {
+            return update.getCallbackQuery().getMessage().getChatId();
+        }
+        return null;
+    }
+
+    private void processQueue() {
+        // Un solo worker: NBABot non è thread-safe, come con il long polling originale
+        while (!Thread.currentThread().isInterrupted()) {
+            QueuedUpdate item;
+            try {
+                item = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            try {
+                bot.consume(item.update());
+            } catch (Exception e) {
+                System.err.println("Errore nell'elaborazione update: " + e.getMessage());
+            } finally {
+                complete(item);
+            }
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package com.nbabot.api;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.nbabot.database.GameRepository;
+import com.nbabot.database.Storage;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mantiene nel database il calendario delle partite in una finestra mobile
+ * (7 giorni passati e 7 futuri), così le richieste per data non chiamano l'API.
+ * Le giornate con tutte le partite terminate vengono congelate e non più scaricate;
+ * quelle con partite in corso vengono aggiornate con un intervallo più breve.
+ */
+public class GameScheduleSync implements AutoCloseable {
+    private static final int WINDOW_DAYS = 7;
+    // I giorni lontani da oggi cambiano raramente: basta un aggiornamento al giorno
+    private static final long DISTANT_DAY_REFRESH_SECONDS = TimeUnit.HOURS.toSeconds(24);
+    // Giorni fuori finestra scaricati su richiesta (/date): al massimo questi per ora
+    private static final int ON_DEMAND_DAYS_PER_HOUR = 10;
+    // Partite rimaste "da iniziare" oltre questo tempo sono rinviate, non in corso
+    private static final long MAX_LIVE_SECONDS = TimeUnit.HOURS.toSeconds(6);
+
+    private final NBAApiClient nbaApi;
+    private final Storage database;
+    private final ZoneId zone;
+    private final long intervalMinutes;
+    private final long liveIntervalMinutes;
+    private final int dailyQuota;
+    private final ScheduledExecutorService scheduler;
+    private long onDemandHour;
+    private int onDemandCount;
+
+    public GameScheduleSync(NBAApiClient nbaApi, Storage database, ZoneId zone,
+                            long intervalMinutes, long liveIntervalMinutes, int dailyQuota) {
+        this.nbaApi = nbaApi;
+        this.database = database;
+        this.zone = zone;
+        this.intervalMinutes = intervalMinutes;
+        this.liveIntervalMinutes = liveIntervalMinutes;
+        this.dailyQuota = dailyQuota;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "game-sync");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public void start() {
+        scheduler.scheduleWithFixedDelay(this::syncWindow, 0, intervalMinutes, TimeUnit.MINUTES);
+        scheduler.scheduleWithFixedDelay(this::syncLiveDays, liveIntervalMinutes, liveIntervalMinutes, TimeUnit.MINUTES);
+    }
+
+    public ZoneId getZone() {
+        return zone;
+    }
+
+    private void syncWindow() {
+        try {
+            // L'API ragiona per giorni UTC: un giorno in più per lato copre i confini del fuso orario
+            LocalDate today = LocalDate.now(ZoneOffset.UTC);
+            for (int offset = -WINDOW_DAYS - 1; offset <= WINDOW_DAYS + 1; offset++) {
+                LocalDate day = today.plusDays(offset);
+                if (Math.abs(offset) <= 1 || isOutdated(day)) {
+                    syncDay(day);
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("Errore nella sincronizzazione partite: " + e.getMessage());
+        }
+    }
+
+    private void syncLiveDays() {
+        try {
+            LocalDate today = LocalDate.now(ZoneOffset.UTC);
+            for (int offset = -1; offset <= 1; offset++) {
+                LocalDate day = today.plusDays(offset);
+                if (hasGamesInProgress(day)) {
+                    syncDay(day);
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("Errore nell'aggiornamento partite in corso: " + e.getMessage());
+        }
+    }
+
+    private boolean hasGamesInProgress(LocalDate utcDay) {
+        long now = Instant.now().getEpochSecond();
+        long from = utcDay.atStartOfDay(ZoneOffset.UTC).toEpochSecond();
+        long to = utcDay.plusDays(1).atStartOfDay(ZoneOffset.UTC).toEpochSecond();
+        // In corso: segnata live, oppure iniziata da poco anche se il database la segna ancora da iniziare
+        return database.getGamesBetween(from, to).stream()
+                .anyMatch(game -> game.status().equals(GameRepository.Game.LIVE)
+                        || (game.isNotStarted() && game.startEpochSecond() <= now
+                        && now - game.startEpochSecond() < MAX_LIVE_SECONDS));
+    }
+
+    private boolean isOutdated(LocalDate day) {
+        GameRepository.GameDay synced = database.getGameDay(day.toString());
+        return synced == null
+                || Instant.now().getEpochSecond() - synced.lastSyncedEpochSecond() > DISTANT_DAY_REFRESH_SECONDS;
+    }
+
+    /**
+     * Partite del giorno locale richiesto. Fuori dalla finestra sincronizzata,
+     * i giorni UTC che lo coprono vengono scaricati una volta su richiesta.
+     * Restituisce null se il giorno non è in archivio e il limite di download orario è esaurito.
+     */
+    public List<GameRepository.Game> getGames(LocalDate localDay) {
+        long from = localDay.atStartOfDay(zone).toEpochSecond();
+        long to = localDay.plusDays(1).atStartOfDay(zone).toEpochSecond();
+
+        for (LocalDate day : utcDaysOf(localDay)) {
+            if (database.getGameDay(day.toString()) == null) {
+                if (!tryAcquireOnDemand() || !syncDay(day)) {
+                    return null;
+                }
+            }
+        }
+        return database.getGamesBetween(from, to);
+    }
+
+    /**
+     * Istante della sincronizzazione meno recente tra i giorni UTC che coprono il giorno locale.
+     */
+    public Instant getLastSynced(LocalDate localDay) {
+        long oldest = Long.MAX_VALUE;
+        for (LocalDate day : utcDaysOf(localDay)) {
+            GameRepository.GameDay synced = database.getGameDay(day.toString());
+            if (synced == null) {
+                return null;
+            }
+            oldest = Math.min(oldest, synced.lastSyncedEpochSecond());
+        }
+        return Instant.ofEpochSecond(oldest);
+    }
+
+    private List<LocalDate> utcDaysOf(LocalDate localDay) {
+        long from = localDay.atStartOfDay(zone).toEpochSecond();
+        long to = localDay.plusDays(1).atStartOfDay(zone).toEpochSecond();
+        LocalDate firstUtcDay = LocalDateTime.ofEpochSecond(from, 0, ZoneOffset.UTC).toLocalDate();
+        LocalDate lastUtcDay = LocalDateTime.ofEpochSecond(to - 1, 0, ZoneOffset.UTC).toLocalDate();
+        List<LocalDate> days = new ArrayList<>();
+        for (LocalDate day = firstUtcDay; !day.isAfter(lastUtcDay); day = day.plusDays(1)) {
+            days.add(day);
+        }
+        return days;
+    }
+
+    private synchronized boolean tryAcquireOnDemand() {
+        long hour = Instant.now().getEpochSecond() / 3600;
+        if (hour != onDemandHour) {
+            onDemandHour = hour;
+            onDemandCount = 0;
+        }
+        if (onDemandCount >= ON_DEMAND_DAYS_PER_HOUR) {
+            return false;
+        }
+        onDemandCount++;
+        return true;
+    }
+
+    /**
+     * @return false se il giorno non è stato scaricato (quota esaurita o API non disponibile)
+     */
+    private boolean syncDay(LocalDate day) {
+        GameRepository.GameDay synced = database.getGameDay(day.toString());
+        if (synced != null && synced.frozen()) {
+            return true;
+        }
+        // Come il prefetch, la sincronizzazione non deve consumare l'ultima richiesta della quota giornaliera
+        if (nbaApi.getRequestsToday() + 1 > dailyQuota) {
+            return false;
+        }
+
+        JsonObject response = nbaApi.getGames(day.toString());
+        if (response == null || !response.has("response") || NBAApiClient.isStale(response)) {
+            return false;
+        }
+
+        List<GameRepository.Game> games = new ArrayList<>();
+        for (JsonElement g : response.getAsJsonArray("response")) {
+            GameRepository.Game game = parseGame(g.getAsJsonObject());
+            if (game != null) {
+                games.add(game);
+            }
+        }
+        database.saveGames(games);
+
+        boolean past = day.isBefore(LocalDate.now(ZoneOffset.UTC).minusDays(1));
+        boolean allFinished = games.stream().allMatch(GameRepository.Game::isFinished);
+        database.markGameDaySynced(day.toString(), past && allFinished);
+        return true;
+    }
+
+    private GameRepository.Game parseGame(JsonObject game) {
+        try {
+            JsonObject teams = game.getAsJsonObject("teams");
+            JsonObject scores = game.getAsJsonObject("scores");
+            return new GameRepository.Game(
+                    game.get("id").getAsInt(),
+                    parseStart(game.get("date")),
+                    parseStatus(game.getAsJsonObject("status")),
+                    teams.getAsJsonObject("home").get("name").getAsString(),
+                    teams.getAsJsonObject("visitors").get("name").getAsString(),
+                    points(scores, "home"),
+                    points(scores, "visitors"));
+        } catch (RuntimeException e) {
+            System.err.println("Partita non valida ignorata: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private String parseStatus(JsonObject status) {
+        // In v2 "short" è numerico; "long" resta come riserva se manca
+        JsonElement code = status.get("short");
+        if (code != null && !code.isJsonNull()) {
+            return code.getAsString();
+        }
+        return switch (status.get("long").getAsString()) {
+            case "Scheduled" -> GameRepository.Game.NOT_STARTED;
+            case "Finished" -> GameRepository.Game.FINISHED;
+            default -> GameRepository.Game.LIVE;
+        };
+    }
+
+    private long parseStart(JsonElement date) {
+        // "date" può essere l'istante ISO oppure un oggetto con il campo "start"
+        String value = date.isJsonObject()
+                ? date.getAsJsonObject().get("start").getAsString()
+                : date.getAsString();
+        try {
+            return Instant.parse(value).getEpochSecond();
+        } catch (DateTimeParseException e) {
+            return OffsetDateTime.parse(value).toEpochSecond();
+        }
+    }
+
+    private Integer points(JsonObject scores, String side) {
+        if (scores == null || !scores.has(side) || scores.get(side).isJsonNull()) {
+            return null;
+        }
+        JsonElement points = scores.getAsJsonObject(side).get("points");
+        return points == null || points.isJsonNull() ? null : points.getAsInt();
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+}
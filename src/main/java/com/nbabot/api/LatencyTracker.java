@@ -0,0 +1,36 @@
+package com.nbabot.api;
+
+import java.util.Arrays;
+
+/**
+ * Ultime latenze osservate per un endpoint, usate per stimare il ritardo di hedging.
+ */
+class LatencyTracker {
+    private static final int MIN_SAMPLES = 20;
+
+    private final long[] samples;
+    private int next;
+    private int count;
+
+    LatencyTracker(int capacity) {
+        this.samples = new long[capacity];
+    }
+
+    synchronized void record(long millis) {
+        samples[next] = millis;
+        next = (next + 1) % samples.length;
+        count = Math.min(count + 1, samples.length);
+    }
+
+    /**
+     * Restituisce il percentile richiesto, oppure -1 se i campioni non sono ancora sufficienti.
+     */
+    synchronized long percentile(double p) {
+        if (count < MIN_SAMPLES) {
+            return -1;
+        }
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        return sorted[Math.min(count - 1, (int) Math.ceil(p * count) - 1)];
+    }
+}
@@ -1,48 +1,420 @@
 package com.nbabot.api;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class NBAApiClient {
+    public static final int CURRENT_SEASON = 2024;
+    // Prima stagione coperta da API-NBA
+    public static final int FIRST_SEASON = 2015;
+
+    private static final int CACHE_MAX_ENTRIES = 500;
+    private static final long TTL_PROFILE = TimeUnit.HOURS.toMillis(24);
+    private static final long TTL_STATISTICS = TimeUnit.HOURS.toMillis(6);
+    private static final long TTL_SEARCH = TimeUnit.HOURS.toMillis(1);
+    private static final long TTL_GAMES = TimeUnit.MINUTES.toMillis(5);
+    private static final int BREAKER_FAILURE_THRESHOLD = 5;
+    private static final long BREAKER_OPEN_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    private static final String STALE_MARKER = "stale";
+    private static final int LATENCY_SAMPLES = 200;
+
     private final String apiKey;
     private final String baseUrl;
     private final OkHttpClient client;
+    private final TransportConfig transport;
+    private final Map<String, LatencyTracker> latencies = new ConcurrentHashMap<>();
+    private final AtomicLong hedgesFired = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+    private final AtomicLong hedgeLosses = new AtomicLong();
     private final Gson gson;
+    private final Map<String, CachedResponse> cache;
+    private final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+    private final ExecutorService revalidateExecutor;
+    private final ExecutorService fetchExecutor;
+    private final List<StatisticsListener> statisticsListeners = new CopyOnWriteArrayList<>();
+    private LocalDate quotaDay = LocalDate.now();
+    private int requestsToday;
+    private int hedgesToday;
 
     public NBAApiClient(String apiKey, String baseUrl) {
+        this(apiKey, baseUrl, TransportConfig.defaults());
+    }
+
+    public NBAApiClient(String apiKey, String baseUrl, TransportConfig transport) {
+        this(apiKey, baseUrl, transport, null);
+    }
+
+    /**
+     * @param archive archivio in cui registrare o da cui riprodurre il traffico; null per la modalità live
+     */
+    public NBAApiClient(String apiKey, String baseUrl, TransportConfig transport, TrafficArchive archive) {
         this.apiKey = apiKey;
         this.baseUrl = baseUrl;
-        this.client = new OkHttpClient.Builder()
-                .connectTimeout(30, TimeUnit.SECONDS)
-                .readTimeout(30, TimeUnit.SECONDS)
-                .build();
+        this.transport = transport;
+        // OkHttp negozia gzip da solo se l'header Accept-Encoding non viene impostato a mano
+        OkHttpClient.Builder builder = new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(
+                        transport.maxIdleConnections(), transport.keepAliveSeconds(), TimeUnit.SECONDS))
+                .connectTimeout(transport.connectTimeoutMillis(), TimeUnit.MILLISECONDS)
+                .readTimeout(0, TimeUnit.MILLISECONDS);
+        if (archive != null) {
+            builder.addInterceptor(archive);
+        }
+        this.client = builder.build();
+        // Le chiamate asincrone (hedging) passano dal dispatcher: deve reggere il fan-out più le hedge
+        this.client.dispatcher().setMaxRequestsPerHost(transport.maxParallelRequests() * 2);
         this.gson = new Gson();
+        // LRU: le stagioni complete dei giocatori sono grandi, meglio limitarne il numero
+        this.cache = new LinkedHashMap<>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedResponse> eldest) {
+                return size() > CACHE_MAX_ENTRIES;
+            }
+        };
+        this.revalidateExecutor = Executors.newFixedThreadPool(2, r -> {
+            Thread t = new Thread(r, "api-revalidate");
+            t.setDaemon(true);
+            return t;
+        });
+        // Limita il parallelismo delle richieste asincrone verso API-NBA
+        this.fetchExecutor = Executors.newFixedThreadPool(transport.maxParallelRequests(), r -> {
+            Thread t = new Thread(r, "api-fetch");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    private ApiResponse cachedRequest(String endpoint, long ttlMillis, boolean revalidateAsync,
+                                      boolean forceRefresh) throws IOException {
+        CachedResponse cached;
+        synchronized (cache) {
+            cached = cache.get(endpoint);
+        }
+
+        if (!forceRefresh && cached != null) {
+            long now = System.currentTimeMillis();
+            if (now - cached.fetchedAt() < ttlMillis || now < cached.freshUntil()) {
+                return new ApiResponse(cached.body(), null);
+            }
+            // Stale-while-revalidate: risposta immediata, aggiornamento in background
+            if (revalidateAsync) {
+                revalidate(endpoint);
+                return new ApiResponse(cached.body(), StaleReason.REVALIDATING);
+            }
+        }
+
+        // Un solo aggiornamento per endpoint: chi arriva durante il fetch riceve l'ultima risposta
+        boolean owner = refreshing.add(endpoint);
+        if (!owner && cached != null && !forceRefresh) {
+            return new ApiResponse(cached.body(), StaleReason.REVALIDATING);
+        }
+
+        try {
+            CircuitBreaker breaker = breakerFor(endpoint);
+            if (!breaker.allowRequest()) {
+                if (cached != null) {
+                    return new ApiResponse(cached.body(), StaleReason.BREAKER_OPEN);
+                }
+                throw new IOException("Servizio API temporaneamente sospeso");
+            }
+
+            try {
+                return new ApiResponse(fetchAndStore(endpoint, breaker), null);
+            } catch (IOException e) {
+                if (cached != null && !forceRefresh) {
+                    return new ApiResponse(cached.body(), StaleReason.FETCH_FAILED);
+                }
+                throw e;
+            }
+        } finally {
+            if (owner) {
+                refreshing.remove(endpoint);
+            }
+        }
+    }
+
+    private String fetchAndStore(String endpoint, CircuitBreaker breaker) throws IOException {
+        String body;
+        try {
+            body = makeRequest(endpoint);
+            breaker.recordSuccess();
+        } catch (IOException e) {
+            breaker.recordFailure();
+            throw e;
+        }
+
+        if (body != null) {
+            synchronized (cache) {
+                cache.put(endpoint, new CachedResponse(body, System.currentTimeMillis(), 0));
+            }
+        }
+        return body;
+    }
+
+    private void revalidate(String endpoint) {
+        if (!refreshing.add(endpoint)) {
+            return;
+        }
+        revalidateExecutor.execute(() -> {
+            try {
+                CircuitBreaker breaker = breakerFor(endpoint);
+                if (breaker.allowRequest()) {
+                    fetchAndStore(endpoint, breaker);
+                }
+            } catch (IOException e) {
+                System.err.println("Errore nell'aggiornamento in background: " + e.getMessage());
+            } finally {
+                refreshing.remove(endpoint);
+            }
+        });
+    }
+
+    private CircuitBreaker breakerFor(String endpoint) {
+        return breakers.computeIfAbsent(pathOf(endpoint),
+                k -> new CircuitBreaker(BREAKER_FAILURE_THRESHOLD, BREAKER_OPEN_MILLIS));
+    }
+
+    private static String pathOf(String endpoint) {
+        int query = endpoint.indexOf('?');
+        return query >= 0 ? endpoint.substring(0, query) : endpoint;
+    }
+
+    private JsonObject toJson(ApiResponse response) {
+        JsonObject json = gson.fromJson(response.body(), JsonObject.class);
+        if (json != null && response.staleReason() != null) {
+            json.addProperty(STALE_MARKER, response.staleReason().name());
+        }
+        return json;
+    }
+
+    /**
+     * Indica se la risposta arriva dalla cache perché l'API non è raggiungibile
+     * o perché è in corso un aggiornamento.
+     */
+    public static boolean isStale(JsonObject response) {
+        return response != null && response.has(STALE_MARKER);
+    }
+
+    /**
+     * Indica se la risposta è dalla cache perché API-NBA non ha risposto o il circuit breaker è aperto,
+     * a differenza del normale aggiornamento in background.
+     */
+    public static boolean isUnreachable(JsonObject response) {
+        return isStale(response)
+                && !response.get(STALE_MARKER).getAsString().equals(StaleReason.REVALIDATING.name());
+    }
+
+    public synchronized int getRequestsToday() {
+        if (!quotaDay.equals(LocalDate.now())) {
+            logDailySummary();
+            quotaDay = LocalDate.now();
+            requestsToday = 0;
+            hedgesToday = 0;
+        }
+        return requestsToday;
+    }
+
+    private void logDailySummary() {
+        System.out.println("Richieste API del " + quotaDay + ": " + requestsToday);
+        if (transport.hedgingEnabled()) {
+            HedgeStats stats = getHedgeStats();
+            System.out.println("Hedging (totale dall'avvio): " + stats.fired() + " richieste hedged, "
+                    + stats.wins() + " vinte, " + stats.losses() + " perse");
+        }
+    }
+
+    private synchronized void countRequest() {
+        getRequestsToday();
+        requestsToday++;
+    }
+
+    private synchronized boolean tryAcquireHedge() {
+        // Le richieste hedged consumano quota: solo entro la loro parte e mai oltre il limite giornaliero
+        getRequestsToday();
+        if (hedgesToday >= transport.dailyQuota() * transport.hedgeQuotaShare()
+                || requestsToday >= transport.dailyQuota()) {
+            return false;
+        }
+        hedgesToday++;
+        requestsToday++;
+        return true;
+    }
+
+    public HedgeStats getHedgeStats() {
+        return new HedgeStats(hedgesFired.get(), hedgeWins.get(), hedgeLosses.get());
     }
 
     private String makeRequest(String endpoint) throws IOException {
+        String path = pathOf(endpoint);
         Request request = new Request.Builder()
                 .url(baseUrl + endpoint)
                 .addHeader("x-apisports-key", apiKey)
                 .build();
 
-        try (Response response = client.newCall(request).execute()) {
-            if (!response.isSuccessful()) {
-                throw new IOException("Errore API: " + response.code());
+        long budget = transport.timeoutFor(path);
+        LatencyTracker latency = latencies.computeIfAbsent(path, k -> new LatencyTracker(LATENCY_SAMPLES));
+        long hedgeDelay = transport.hedgingEnabled() ? latency.percentile(0.95) : -1;
+        if (hedgeDelay > 0 && hedgeDelay < budget) {
+            return executeHedged(request, latency, budget, hedgeDelay);
+        }
+
+        countRequest();
+        long start = System.nanoTime();
+        Call call = client.newCall(request);
+        call.timeout().timeout(budget, TimeUnit.MILLISECONDS);
+        try (Response response = call.execute()) {
+            String body = readBody(response);
+            latency.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            return body;
+        } catch (InterruptedIOException e) {
+            // Anche i timeout entrano nel p95, altrimenti le richieste lente sparirebbero dal campione
+            latency.record(budget);
+            throw e;
+        }
+    }
+
+    private String executeHedged(Request request, LatencyTracker latency, long budget, long hedgeDelay)
+            throws IOException {
+        CompletableFuture<String> result = new CompletableFuture<>();
+        AtomicInteger pending = new AtomicInteger(1);
+        AtomicBoolean hedged = new AtomicBoolean(false);
+        // Latenza della prima richiesta, vinca o perda: -1 finché è in corso, -2 se fallita senza timeout
+        AtomicLong primaryLatency = new AtomicLong(-1);
+
+        countRequest();
+        long start = System.nanoTime();
+        Call primary = client.newCall(request);
+        primary.timeout().timeout(budget, TimeUnit.MILLISECONDS);
+        primary.enqueue(new HedgeCallback(result, pending, hedged, primaryLatency, budget, false));
+        Call hedge = null;
+
+        try {
+            try {
+                return result.get(hedgeDelay, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                // La prima richiesta ha superato il p95: ne parte una seconda, vince la più veloce
+                if (tryAcquireHedge()) {
+                    pending.incrementAndGet();
+                    hedged.set(true);
+                    hedgesFired.incrementAndGet();
+                    hedge = client.newCall(request);
+                    hedge.timeout().timeout(budget - hedgeDelay, TimeUnit.MILLISECONDS);
+                    hedge.enqueue(new HedgeCallback(result, pending, hedged, primaryLatency, budget, true));
+                }
+            }
+            return result.get(budget - hedgeDelay, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new InterruptedIOException("timeout");
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrotto");
+        } finally {
+            // Se la prima richiesta è ancora in corso (ha vinto la hedge o è scaduto il budget)
+            // vale almeno il tempo trascorso finora
+            long primaryMillis = primaryLatency.get();
+            if (primaryMillis == -1) {
+                primaryMillis = Math.min(budget, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            }
+            if (primaryMillis >= 0) {
+                latency.record(primaryMillis);
+            }
+            primary.cancel();
+            if (hedge != null) {
+                hedge.cancel();
+            }
+        }
+    }
+
+    private static String readBody(Response response) throws IOException {
+        if (!response.isSuccessful()) {
+            throw new IOException("Errore API: " + response.code());
+        }
+        return response.body() != null ? response.body().string() : null;
+    }
+
+    private class HedgeCallback implements Callback {
+        private final CompletableFuture<String> result;
+        private final AtomicInteger pending;
+        private final AtomicBoolean hedged;
+        private final AtomicLong primaryLatency;
+        private final long budget;
+        private final boolean isHedge;
+        private final long start = System.nanoTime();
+
+        HedgeCallback(CompletableFuture<String> result, AtomicInteger pending, AtomicBoolean hedged,
+                      AtomicLong primaryLatency, long budget, boolean isHedge) {
+            this.result = result;
+            this.pending = pending;
+            this.hedged = hedged;
+            this.primaryLatency = primaryLatency;
+            this.budget = budget;
+            this.isHedge = isHedge;
+        }
+
+        @Override
+        public void onResponse(Call call, Response response) {
+            try (response) {
+                String body = readBody(response);
+                if (!isHedge) {
+                    // Solo la prima richiesta misura il servizio: la hedge parte già in ritardo
+                    primaryLatency.compareAndSet(-1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                }
+                if (result.complete(body)) {
+                    if (isHedge) {
+                        hedgeWins.incrementAndGet();
+                    } else if (hedged.get()) {
+                        hedgeLosses.incrementAndGet();
+                    }
+                }
+            } catch (IOException e) {
+                onFailure(call, e);
+            }
+        }
+
+        @Override
+        public void onFailure(Call call, IOException e) {
+            if (!isHedge && !call.isCanceled()) {
+                primaryLatency.compareAndSet(-1, e instanceof InterruptedIOException ? budget : -2);
+            }
+            if (pending.decrementAndGet() == 0) {
+                result.completeExceptionally(e);
             }
-            return response.body() != null ? response.body().string() : null;
         }
     }
 
     public JsonObject getPlayerById(int playerId) {
         try {
-            String response = makeRequest("/players?id=" + playerId);
-            return gson.fromJson(response, JsonObject.class);
+            ApiResponse response = cachedRequest("/players?id=" + playerId, TTL_PROFILE, true, false);
+            return toJson(response);
         } catch (IOException e) {
             System.err.println("Errore nel recupero giocatore: " + e.getMessage());
             return null;
@@ -51,8 +423,8 @@ public class NBAApiClient {
 
     public JsonObject searchPlayers(String name) {
         try {
-            String response = makeRequest("/players?search=" + name);
-            return gson.fromJson(response, JsonObject.class);
+            ApiResponse response = cachedRequest("/players?search=" + name, TTL_SEARCH, true, false);
+            return toJson(response);
         } catch (IOException e) {
             System.err.println("Errore nella ricerca giocatori: " + e.getMessage());
             return null;
@@ -61,28 +433,66 @@ public class NBAApiClient {
 
     public JsonObject getPlayerStatistics(int playerId, int season) {
         try {
-            String response = makeRequest("/players/statistics?id=" + playerId + "&season=" + season);
-            return gson.fromJson(response, JsonObject.class);
+            ApiResponse response = cachedRequest("/players/statistics?id=" + playerId + "&season=" + season, TTL_STATISTICS, true, false);
+            JsonObject json = toJson(response);
+            notifyStatistics(playerId, season, json);
+            return json;
         } catch (IOException e) {
             System.err.println("Errore nel recupero statistiche giocatore: " + e.getMessage());
             return null;
         }
     }
 
+    public void addStatisticsListener(StatisticsListener listener) {
+        statisticsListeners.add(listener);
+    }
+
+    private void notifyStatistics(int playerId, int season, JsonObject response) {
+        // I dati stale non portano partite nuove
+        if (response == null || isStale(response) || !response.has("response")) {
+            return;
+        }
+        for (StatisticsListener listener : statisticsListeners) {
+            try {
+                listener.onStatistics(playerId, season, response.getAsJsonArray("response"));
+            } catch (RuntimeException e) {
+                System.err.println("Errore nell'elaborazione statistiche: " + e.getMessage());
+            }
+        }
+    }
+
+    public CompletableFuture<JsonObject> searchPlayersAsync(String name) {
+        return CompletableFuture.supplyAsync(() -> searchPlayers(name), fetchExecutor);
+    }
+
+    public CompletableFuture<JsonObject> getPlayerStatisticsAsync(int playerId, int season) {
+        return CompletableFuture.supplyAsync(() -> getPlayerStatistics(playerId, season), fetchExecutor);
+    }
+
     public JsonObject getTeamById(int teamId) {
         try {
-            String response = makeRequest("/teams?id=" + teamId);
-            return gson.fromJson(response, JsonObject.class);
+            ApiResponse response = cachedRequest("/teams?id=" + teamId, TTL_PROFILE, true, false);
+            return toJson(response);
         } catch (IOException e) {
             System.err.println("Errore nel recupero team: " + e.getMessage());
             return null;
         }
     }
 
+    public JsonObject getTeamPlayers(int teamId, int season) {
+        try {
+            ApiResponse response = cachedRequest("/players?team=" + teamId + "&season=" + season, TTL_PROFILE, true, false);
+            return toJson(response);
+        } catch (IOException e) {
+            System.err.println("Errore nel recupero rosa: " + e.getMessage());
+            return null;
+        }
+    }
+
     public JsonObject searchTeams(String name) {
         try {
-            String response = makeRequest("/teams?search=" + name);
-            return gson.fromJson(response, JsonObject.class);
+            ApiResponse response = cachedRequest("/teams?search=" + name, TTL_SEARCH, true, false);
+            return toJson(response);
         } catch (IOException e) {
             System.err.println("Errore nella ricerca team: " + e.getMessage());
             return null;
@@ -91,8 +501,8 @@ public class NBAApiClient {
 
     public JsonObject getGames(String date) {
         try {
-            String response = makeRequest("/games?date=" + date);
-            return gson.fromJson(response, JsonObject.class);
+            ApiResponse response = cachedRequest("/games?date=" + date, TTL_GAMES, false, false);
+            return toJson(response);
         } catch (IOException e) {
             System.err.println("Errore nel recupero partite: " + e.getMessage());
             return null;
@@ -101,11 +511,64 @@ public class NBAApiClient {
 
     public JsonObject getLiveGames() {
         try {
-            String response = makeRequest("/games?live=all");
-            return gson.fromJson(response, JsonObject.class);
+            ApiResponse response = cachedRequest("/games?live=all", 0, false, false);
+            return toJson(response);
         } catch (IOException e) {
             System.err.println("Errore nel recupero partite live: " + e.getMessage());
             return null;
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Scarica di nuovo profilo e statistiche stagionali ignorando la cache.
+     * Le risposte restano fresche almeno fino a freshUntilMillis, cioè fino al prefetch successivo.
+     * Restituisce il numero di richieste effettuate.
+     */
+    public int refreshPlayer(int playerId, int season, long freshUntilMillis) {
+        int requests = 0;
+        String profile = "/players?id=" + playerId;
+        String statistics = "/players/statistics?id=" + playerId + "&season=" + season;
+        try {
+            requests++;
+            cachedRequest(profile, TTL_PROFILE, false, true);
+            keepFresh(profile, freshUntilMillis);
+            requests++;
+            ApiResponse stats = cachedRequest(statistics, TTL_STATISTICS, false, true);
+            keepFresh(statistics, freshUntilMillis);
+            notifyStatistics(playerId, season, toJson(stats));
+        } catch (IOException e) {
+            System.err.println("Errore nel prefetch giocatore " + playerId + ": " + e.getMessage());
+        }
+        return requests;
+    }
+
+    private void keepFresh(String endpoint, long freshUntilMillis) {
+        synchronized (cache) {
+            CachedResponse cached = cache.get(endpoint);
+            if (cached != null) {
+                cache.put(endpoint, new CachedResponse(cached.body(), cached.fetchedAt(), freshUntilMillis));
+            }
+        }
+    }
+
+    // freshUntil: scadenza esplicita oltre il TTL dell'endpoint, 0 se assente
+    private record CachedResponse(String body, long fetchedAt, long freshUntil) {}
+
+    private enum StaleReason { REVALIDATING, BREAKER_OPEN, FETCH_FAILED }
+
+    // staleReason null: risposta fresca
+    private record ApiResponse(String body, StaleReason staleReason) {}
+
+    /**
+     * Riceve le statistiche per partita di un giocatore ogni volta che vengono lette.
+     */
+    public interface StatisticsListener {
+        void onStatistics(int playerId, int season, JsonArray games);
+    }
+
+    /**
+     * fired: richieste hedged partite; wins: vinte dalla seconda richiesta;
+     * losses: la prima richiesta è arrivata comunque prima.
+     */
+    public record HedgeStats(long fired, long wins, long losses) {}
+}
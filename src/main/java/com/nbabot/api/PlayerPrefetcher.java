@@ -0,0 +1,137 @@
+package com.nbabot.api;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.nbabot.database.Storage;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Aggiorna in cache profilo e statistiche stagionali dei giocatori più richiesti,
+ * così le consultazioni più frequenti non devono scaricare l'intera stagione.
+ * Lavora solo nella fascia oraria configurata e entro una quota delle richieste giornaliere.
+ */
+public class PlayerPrefetcher implements AutoCloseable {
+    private static final int HISTORY_DAYS = 7;
+    // Ricerche troppo generiche (es. "james") non identificano un giocatore preciso
+    private static final int MAX_HITS_PER_QUERY = 3;
+
+    private final NBAApiClient nbaApi;
+    private final Storage database;
+    private final int topPlayers;
+    private final int dailyQuota;
+    private final int prefetchBudget;
+    private final int windowStartHour;
+    private final int windowEndHour;
+    private final ScheduledExecutorService scheduler;
+
+    private LocalDate lastRunDay;
+    private int requestsUsed;
+
+    public PlayerPrefetcher(NBAApiClient nbaApi, Storage database, int topPlayers,
+                            int dailyQuota, double quotaShare, int windowStartHour, int windowEndHour) {
+        this.nbaApi = nbaApi;
+        this.database = database;
+        this.topPlayers = topPlayers;
+        this.dailyQuota = dailyQuota;
+        this.prefetchBudget = (int) (dailyQuota * quotaShare);
+        this.windowStartHour = windowStartHour;
+        this.windowEndHour = windowEndHour;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "player-prefetch");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public void start() {
+        scheduler.scheduleWithFixedDelay(this::runIfDue, 1, 30, TimeUnit.MINUTES);
+    }
+
+    private void runIfDue() {
+        int hour = LocalTime.now().getHour();
+        boolean inWindow = windowStartHour <= windowEndHour
+                ? hour >= windowStartHour && hour < windowEndHour
+                : hour >= windowStartHour || hour < windowEndHour;
+        if (!inWindow || LocalDate.now().equals(lastRunDay)) {
+            return;
+        }
+
+        try {
+            lastRunDay = LocalDate.now();
+            requestsUsed = 0;
+            prefetch();
+        } catch (Exception e) {
+            System.err.println("Errore nel prefetch giocatori: " + e.getMessage());
+        }
+    }
+
+    private void prefetch() {
+        List<Integer> players = rankPlayers();
+        // I dati scaricati restano validi per tutto il picco serale, fino alla fine della prossima fascia
+        long freshUntil = LocalDate.now().plusDays(1).atTime(windowEndHour, 0)
+                .atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        int refreshed = 0;
+        for (int playerId : players) {
+            if (!hasBudget(2)) {
+                break;
+            }
+            requestsUsed += nbaApi.refreshPlayer(playerId, NBAApiClient.CURRENT_SEASON, freshUntil);
+            refreshed++;
+        }
+        System.out.println("Prefetch completato: " + refreshed + " giocatori, " + requestsUsed + " richieste");
+    }
+
+    private List<Integer> rankPlayers() {
+        Map<Integer, Double> scores = new HashMap<>();
+        database.getMostFavorited("PLAYER", topPlayers)
+                .forEach((playerId, count) -> scores.merge(playerId, (double) count, Double::sum));
+
+        Map<String, Integer> queries = database.getTopSearchQueries("player", HISTORY_DAYS, topPlayers);
+        for (Map.Entry<String, Integer> query : queries.entrySet()) {
+            if (!hasBudget(1)) {
+                break;
+            }
+            // La ricerca è in cache se qualcuno l'ha fatta di recente, altrimenti costa una richiesta
+            int before = nbaApi.getRequestsToday();
+            JsonObject response = nbaApi.searchPlayers(query.getKey());
+            requestsUsed += nbaApi.getRequestsToday() - before;
+            if (response == null || !response.has("response")) {
+                continue;
+            }
+
+            JsonArray hits = response.getAsJsonArray("response");
+            if (hits.isEmpty() || hits.size() > MAX_HITS_PER_QUERY) {
+                continue;
+            }
+            double share = (double) query.getValue() / hits.size();
+            for (int i = 0; i < hits.size(); i++) {
+                scores.merge(hits.get(i).getAsJsonObject().get("id").getAsInt(), share, Double::sum);
+            }
+        }
+
+        return scores.entrySet().stream()
+                .sorted(Map.Entry.<Integer, Double>comparingByValue().reversed())
+                .limit(topPlayers)
+                .map(Map.Entry::getKey)
+                .toList();
+    }
+
+    private boolean hasBudget(int requests) {
+        return requestsUsed + requests <= prefetchBudget
+                && nbaApi.getRequestsToday() + requests <= dailyQuota;
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+}
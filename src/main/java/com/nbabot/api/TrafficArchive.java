@@ -0,0 +1,171 @@
+package com.nbabot.api;
+
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Registra il traffico verso API-NBA in un archivio gzip e lo riproduce senza rete né quota.
+ * Ogni record contiene endpoint, codice HTTP, latenza e corpo della risposta; in replay le
+ * risposte dello stesso endpoint vengono servite nell'ordine in cui erano state registrate.
+ */
+public class TrafficArchive implements Interceptor, AutoCloseable {
+    private static final int FORMAT_VERSION = 1;
+    private static final MediaType JSON = MediaType.get("application/json");
+
+    private record Exchange(int code, int latencyMillis, byte[] body) {}
+
+    private final DataOutputStream out;
+    private final Map<String, Deque<Exchange>> recorded;
+    private final boolean realTiming;
+
+    private TrafficArchive(DataOutputStream out, Map<String, Deque<Exchange>> recorded, boolean realTiming) {
+        this.out = out;
+        this.recorded = recorded;
+        this.realTiming = realTiming;
+    }
+
+    public static TrafficArchive recording(String path) throws IOException {
+        // Sync flush a ogni record: l'archivio resta leggibile anche se il bot viene terminato
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(new FileOutputStream(path), true)));
+        out.writeInt(FORMAT_VERSION);
+        out.flush();
+        return new TrafficArchive(out, null, false);
+    }
+
+    /**
+     * @param realTiming se true ogni risposta attende la latenza registrata, altrimenti è immediata
+     */
+    public static TrafficArchive replaying(String path, boolean realTiming) throws IOException {
+        Map<String, Deque<Exchange>> recorded = new HashMap<>();
+        int count = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(new FileInputStream(path))))) {
+            if (in.readInt() != FORMAT_VERSION) {
+                throw new IOException("Formato archivio non supportato: " + path);
+            }
+            while (true) {
+                String endpoint;
+                try {
+                    endpoint = in.readUTF();
+                } catch (EOFException e) {
+                    break;
+                }
+                int code = in.readShort();
+                int latency = in.readInt();
+                byte[] body = new byte[in.readInt()];
+                in.readFully(body);
+                recorded.computeIfAbsent(endpoint, k -> new ArrayDeque<>()).add(new Exchange(code, latency, body));
+                count++;
+            }
+        } catch (EOFException e) {
+            // Ultimo record troncato da una chiusura non pulita: si usa quanto letto finora
+            System.err.println("Archivio traffico troncato, record letti: " + count);
+        }
+        System.out.println("Archivio traffico caricato: " + count + " risposte");
+        return new TrafficArchive(null, recorded, realTiming);
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        return recorded != null ? replay(chain.request()) : record(chain);
+    }
+
+    private Response record(Chain chain) throws IOException {
+        long start = System.nanoTime();
+        Response response = chain.proceed(chain.request());
+        byte[] body = response.body() != null ? response.body().bytes() : new byte[0];
+        int latency = (int) TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        String endpoint = endpointOf(chain.request());
+        synchronized (out) {
+            out.writeUTF(endpoint);
+            out.writeShort(response.code());
+            out.writeInt(latency);
+            out.writeInt(body.length);
+            out.write(body);
+            out.flush();
+        }
+
+        MediaType type = response.body() != null ? response.body().contentType() : JSON;
+        return response.newBuilder().body(ResponseBody.create(body, type)).build();
+    }
+
+    private Response replay(Request request) throws IOException {
+        Exchange exchange = next(endpointOf(request));
+        if (exchange == null) {
+            return buildResponse(request, 404, "Richiesta non presente nell'archivio".getBytes());
+        }
+
+        if (realTiming && exchange.latencyMillis() > 0) {
+            try {
+                Thread.sleep(exchange.latencyMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrotto");
+            }
+        }
+        return buildResponse(request, exchange.code(), exchange.body());
+    }
+
+    private Exchange next(String endpoint) {
+        synchronized (recorded) {
+            Deque<Exchange> queue = recorded.get(endpoint);
+            if (queue == null || queue.isEmpty()) {
+                return null;
+            }
+            // L'ultima risposta resta disponibile per le richieste successive
+            return queue.size() > 1 ? queue.poll() : queue.peek();
+        }
+    }
+
+    private static Response buildResponse(Request request, int code, byte[] body) {
+        return new Response.Builder()
+                .request(request)
+                .protocol(Protocol.HTTP_1_1)
+                .code(code)
+                .message(code == 200 ? "OK" : "Replay")
+                .body(ResponseBody.create(body, JSON))
+                .build();
+    }
+
+    private static String endpointOf(Request request) {
+        String query = request.url().encodedQuery();
+        return query != null ? request.url().encodedPath() + "?" + query : request.url().encodedPath();
+    }
+
+    @Override
+    public void close() {
+        if (out == null) {
+            return;
+        }
+        try {
+            synchronized (out) {
+                out.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Errore nella chiusura dell'archivio traffico: " + e.getMessage());
+        }
+    }
+}
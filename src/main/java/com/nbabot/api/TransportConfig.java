@@ -0,0 +1,60 @@
+package com.nbabot.api;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Parametri del trasporto HTTP verso API-NBA: pool di connessioni, budget di timeout
+ * per endpoint, richieste parallele e richieste hedged (una seconda richiesta se la prima
+ * tarda oltre il p95).
+ */
+public record TransportConfig(int maxIdleConnections,
+                              long keepAliveSeconds,
+                              long connectTimeoutMillis,
+                              long defaultTimeoutMillis,
+                              Map<String, Long> endpointTimeoutsMillis,
+                              boolean hedgingEnabled,
+                              int dailyQuota,
+                              double hedgeQuotaShare,
+                              int maxParallelRequests) {
+
+    // Una carriera completa (FIRST_SEASON..CURRENT_SEASON) in un solo giro di richieste
+    public static final int DEFAULT_MAX_PARALLEL_REQUESTS =
+            NBAApiClient.CURRENT_SEASON - NBAApiClient.FIRST_SEASON + 1;
+
+    public static TransportConfig defaults() {
+        return new TransportConfig(5, 300, 3_000, 10_000, defaultEndpointTimeouts(), false, 100, 0.05,
+                DEFAULT_MAX_PARALLEL_REQUESTS);
+    }
+
+    public static Map<String, Long> defaultEndpointTimeouts() {
+        Map<String, Long> timeouts = new HashMap<>();
+        // Le statistiche stagionali sono il payload più grande
+        timeouts.put("/players/statistics", 15_000L);
+        timeouts.put("/players", 5_000L);
+        timeouts.put("/teams", 5_000L);
+        timeouts.put("/games", 5_000L);
+        return timeouts;
+    }
+
+    /**
+     * Legge override nel formato "/games:4000,/players/statistics:20000".
+     */
+    public static Map<String, Long> parseEndpointTimeouts(String value) {
+        Map<String, Long> timeouts = defaultEndpointTimeouts();
+        if (value == null || value.isBlank()) {
+            return timeouts;
+        }
+        for (String item : value.split(",")) {
+            String[] parts = item.trim().split(":");
+            if (parts.length == 2) {
+                timeouts.put(parts[0].trim(), Long.parseLong(parts[1].trim()));
+            }
+        }
+        return timeouts;
+    }
+
+    public long timeoutFor(String path) {
+        return endpointTimeoutsMillis.getOrDefault(path, defaultTimeoutMillis);
+    }
+}
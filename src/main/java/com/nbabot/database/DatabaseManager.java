@@ -2,11 +2,22 @@ package com.nbabot.database;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
-public class DatabaseManager {
+public class DatabaseManager implements Storage {
     private final String dbPath;
+    // Unica connessione condivisa da bot, prefetch, sincronizzazione partite e client API: metodi synchronized
     private Connection connection;
+    private ScheduledExecutorService maintenanceScheduler;
+    private final TrendingSearches trendingSearches = new TrendingSearches();
+
+    private static final int MAINTENANCE_BATCH_SIZE = 500;
+    private static final int VACUUM_PAGES_PER_RUN = 1000;
 
     public DatabaseManager(String dbPath) {
         this.dbPath = dbPath;
@@ -15,14 +26,29 @@ public class DatabaseManager {
 
     private void initDatabase() {
         try {
-            connection = DriverManager.getConnection("jdbc:sqlite:" + dbPath);
+            connection = openConnection();
+            try (Statement stmt = connection.createStatement()) {
+                // auto_vacuum deve precedere la creazione delle tabelle e il passaggio a WAL
+                stmt.execute("PRAGMA auto_vacuum = INCREMENTAL");
+                // WAL permette letture concorrenti alla manutenzione
+                stmt.execute("PRAGMA journal_mode = WAL");
+            }
             createTables();
+            loadRecentSearches();
             System.out.println("Database inizializzato con successo!");
         } catch (SQLException e) {
             System.err.println("Errore nell'inizializzazione del database: " + e.getMessage());
         }
     }
 
+    private Connection openConnection() throws SQLException {
+        Connection conn = DriverManager.getConnection("jdbc:sqlite:" + dbPath);
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("PRAGMA busy_timeout = 5000");
+        }
+        return conn;
+    }
+
     private void createTables() {
         String createUsersTable = """
             CREATE TABLE IF NOT EXISTS users (
@@ -71,17 +97,88 @@ public class DatabaseManager {
             )
         """;
 
+        String createSearchHistoryDailyTable = """
+            CREATE TABLE IF NOT EXISTS search_history_daily (
+                search_day TEXT NOT NULL,
+                search_type TEXT NOT NULL,
+                search_query TEXT NOT NULL,
+                search_count INTEGER NOT NULL DEFAULT 0,
+                PRIMARY KEY (search_day, search_type, search_query)
+            )
+        """;
+
+        String createSearchHistoryDateIndex =
+                "CREATE INDEX IF NOT EXISTS idx_search_history_date ON search_history(search_date)";
+
+        String createTeamLogosTable = """
+            CREATE TABLE IF NOT EXISTS team_logos (
+                team_id INTEGER PRIMARY KEY,
+                logo_url TEXT NOT NULL,
+                file_id TEXT NOT NULL,
+                saved_date TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+            )
+        """;
+
+        String createGamesTable = """
+            CREATE TABLE IF NOT EXISTS games (
+                game_id INTEGER PRIMARY KEY,
+                start_time INTEGER NOT NULL,
+                status TEXT NOT NULL,
+                home_team TEXT NOT NULL,
+                away_team TEXT NOT NULL,
+                home_score INTEGER,
+                away_score INTEGER,
+                finished INTEGER NOT NULL DEFAULT 0,
+                updated_date TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+            )
+        """;
+
+        String createGamesStartIndex = "CREATE INDEX IF NOT EXISTS idx_games_start ON games(start_time)";
+
+        String createGameDaysTable = """
+            CREATE TABLE IF NOT EXISTS game_days (
+                day TEXT PRIMARY KEY,
+                frozen INTEGER NOT NULL DEFAULT 0,
+                last_synced INTEGER NOT NULL
+            )
+        """;
+
+        String createPlayerGameStatsTable = """
+            CREATE TABLE IF NOT EXISTS player_game_stats (
+                player_id INTEGER NOT NULL,
+                game_id INTEGER NOT NULL,
+                season INTEGER NOT NULL,
+                player_name TEXT NOT NULL,
+                points INTEGER NOT NULL,
+                rebounds INTEGER NOT NULL,
+                assists INTEGER NOT NULL,
+                PRIMARY KEY (player_id, game_id)
+            )
+        """;
+
+        String createPlayerGameStatsSeasonIndex =
+                "CREATE INDEX IF NOT EXISTS idx_player_game_stats_season ON player_game_stats(season)";
+
         try (Statement stmt = connection.createStatement()) {
             stmt.execute(createUsersTable);
             stmt.execute(createFavoritesTable);
             stmt.execute(createSearchHistoryTable);
             stmt.execute(createStatsTable);
+            stmt.execute(createSearchHistoryDailyTable);
+            stmt.execute(createSearchHistoryDateIndex);
+            stmt.execute(createTeamLogosTable);
+            stmt.execute(createGamesTable);
+            stmt.execute(createGamesStartIndex);
+            stmt.execute(createGameDaysTable);
+            stmt.execute(createPlayerGameStatsTable);
+            stmt.execute(createPlayerGameStatsSeasonIndex);
         } catch (SQLException e) {
             System.err.println("Errore nella creazione delle tabelle: " + e.getMessage());
         }
     }
 
-    public void registerUser(long userId, String firstName, String lastName, String username) {
+    @Override
+    public synchronized void registerUser(long userId, String firstName, String lastName, String username) {
         String sql = """
             INSERT OR IGNORE INTO users (user_id, first_name, last_name, username)
             VALUES (?, ?, ?, ?)
@@ -105,7 +202,8 @@ public class DatabaseManager {
         }
     }
 
-    public void updateLastInteraction(long userId) {
+    @Override
+    public synchronized void updateLastInteraction(long userId) {
         String sql = "UPDATE users SET last_interaction = CURRENT_TIMESTAMP WHERE user_id = ?";
         try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
             pstmt.setLong(1, userId);
@@ -115,7 +213,8 @@ public class DatabaseManager {
         }
     }
 
-    public boolean saveFavorite(long userId, String type, int itemId, String itemName, String itemData) {
+    @Override
+    public synchronized boolean saveFavorite(long userId, String type, int itemId, String itemName, String itemData) {
         String sql = """
             INSERT OR REPLACE INTO favorites (user_id, favorite_type, item_id, item_name, item_data)
             VALUES (?, ?, ?, ?, ?)
@@ -137,7 +236,8 @@ public class DatabaseManager {
         }
     }
 
-    public boolean removeFavorite(long userId, String type, int itemId) {
+    @Override
+    public synchronized boolean removeFavorite(long userId, String type, int itemId) {
         String sql = "DELETE FROM favorites WHERE user_id = ? AND favorite_type = ? AND item_id = ?";
         try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
             pstmt.setLong(1, userId);
@@ -154,7 +254,8 @@ public class DatabaseManager {
         }
     }
 
-    public List<Favorite> getFavorites(long userId, String type) {
+    @Override
+    public synchronized List<Favorite> getFavorites(long userId, String type) {
         List<Favorite> favorites = new ArrayList<>();
         String sql = type != null ?
                 "SELECT * FROM favorites WHERE user_id = ? AND favorite_type = ? ORDER BY saved_date DESC" :
@@ -184,7 +285,85 @@ public class DatabaseManager {
         return favorites;
     }
 
-    public void addSearchHistory(long userId, String searchType, String query) {
+    private void loadRecentSearches() {
+        // Ripopola le finestre di tendenza dopo un riavvio
+        String sql = """
+            SELECT search_type, search_query, CAST(strftime('%s', search_date) AS INTEGER) AS ts
+            FROM search_history
+            WHERE search_date >= datetime('now', '-1 day')
+            ORDER BY id
+        """;
+        try (Statement stmt = connection.createStatement()) {
+            ResultSet rs = stmt.executeQuery(sql);
+            while (rs.next()) {
+                trendingSearches.record(rs.getString("search_type"), rs.getString("search_query"), rs.getLong("ts") * 1000);
+            }
+        } catch (SQLException e) {
+            System.err.println("Errore nel caricamento ricerche recenti: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public List<TrendingSearches.Entry> getTrendingSearches(TrendingSearches.Period period, int limit) {
+        return trendingSearches.top(period, limit, System.currentTimeMillis());
+    }
+
+    @Override
+    public synchronized Map<Integer, Integer> getMostFavorited(String type, int limit) {
+        Map<Integer, Integer> counts = new LinkedHashMap<>();
+        String sql = """
+            SELECT item_id, COUNT(*) AS favorite_count FROM favorites
+            WHERE favorite_type = ?
+            GROUP BY item_id ORDER BY favorite_count DESC LIMIT ?
+        """;
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setString(1, type);
+            pstmt.setInt(2, limit);
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                counts.put(rs.getInt("item_id"), rs.getInt("favorite_count"));
+            }
+        } catch (SQLException e) {
+            System.err.println("Errore nel recupero preferiti popolari: " + e.getMessage());
+        }
+        return counts;
+    }
+
+    @Override
+    public synchronized Map<String, Integer> getTopSearchQueries(String searchType, int days, int limit) {
+        // Unisce la cronologia grezza con gli aggregati giornalieri prodotti dalla manutenzione
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        String sql = """
+            SELECT query, SUM(search_count) AS total FROM (
+                SELECT lower(search_query) AS query, COUNT(*) AS search_count FROM search_history
+                WHERE search_type = ? AND search_date >= datetime('now', ?)
+                GROUP BY lower(search_query)
+                UNION ALL
+                SELECT search_query, search_count FROM search_history_daily
+                WHERE search_type = ? AND search_day >= date('now', ?)
+            )
+            GROUP BY query ORDER BY total DESC LIMIT ?
+        """;
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setString(1, searchType);
+            pstmt.setString(2, "-" + days + " days");
+            pstmt.setString(3, searchType);
+            pstmt.setString(4, "-" + days + " days");
+            pstmt.setInt(5, limit);
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                counts.put(rs.getString("query"), rs.getInt("total"));
+            }
+        } catch (SQLException e) {
+            System.err.println("Errore nel recupero ricerche popolari: " + e.getMessage());
+        }
+        return counts;
+    }
+
+    @Override
+    public synchronized void addSearchHistory(long userId, String searchType, String query) {
+        trendingSearches.record(searchType, query, System.currentTimeMillis());
+
         String sql = "INSERT INTO search_history (user_id, search_type, search_query) VALUES (?, ?, ?)";
         try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
             pstmt.setLong(1, userId);
@@ -221,7 +400,8 @@ public class DatabaseManager {
         }
     }
 
-    public UserStatistics getUserStatistics(long userId) {
+    @Override
+    public synchronized UserStatistics getUserStatistics(long userId) {
         String sql = """
             SELECT us.*, 
                    (SELECT COUNT(*) FROM favorites WHERE user_id = ? AND favorite_type = 'PLAYER') as player_favorites,
@@ -253,7 +433,293 @@ public class DatabaseManager {
         return null;
     }
 
-    public void close() {
+    @Override
+    public synchronized String getTeamLogoFileId(int teamId, String logoUrl) {
+        // Il file_id vale solo se il logo della squadra non è cambiato
+        String sql = "SELECT file_id FROM team_logos WHERE team_id = ? AND logo_url = ?";
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setInt(1, teamId);
+            pstmt.setString(2, logoUrl);
+            ResultSet rs = pstmt.executeQuery();
+            if (rs.next()) {
+                return rs.getString("file_id");
+            }
+        } catch (SQLException e) {
+            System.err.println("Errore nel recupero logo: " + e.getMessage());
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized void saveTeamLogoFileId(int teamId, String logoUrl, String fileId) {
+        String sql = "INSERT OR REPLACE INTO team_logos (team_id, logo_url, file_id) VALUES (?, ?, ?)";
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setInt(1, teamId);
+            pstmt.setString(2, logoUrl);
+            pstmt.setString(3, fileId);
+            pstmt.executeUpdate();
+        } catch (SQLException e) {
+            System.err.println("Errore nel salvataggio logo: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void removeTeamLogoFileId(int teamId) {
+        String sql = "DELETE FROM team_logos WHERE team_id = ?";
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setInt(1, teamId);
+            pstmt.executeUpdate();
+        } catch (SQLException e) {
+            System.err.println("Errore nella rimozione logo: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void saveGames(List<Game> games) {
+        String sql = """
+            INSERT INTO games (game_id, start_time, status, home_team, away_team, home_score, away_score, finished)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?)
+            ON CONFLICT (game_id) DO UPDATE SET
+                start_time = excluded.start_time,
+                status = excluded.status,
+                home_team = excluded.home_team,
+                away_team = excluded.away_team,
+                home_score = excluded.home_score,
+                away_score = excluded.away_score,
+                finished = excluded.finished,
+                updated_date = CURRENT_TIMESTAMP
+            WHERE games.finished = 0
+        """;
+
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            for (Game game : games) {
+                pstmt.setInt(1, game.gameId());
+                pstmt.setLong(2, game.startEpochSecond());
+                pstmt.setString(3, game.status());
+                pstmt.setString(4, game.homeTeam());
+                pstmt.setString(5, game.awayTeam());
+                pstmt.setObject(6, game.homeScore());
+                pstmt.setObject(7, game.awayScore());
+                pstmt.setInt(8, game.isFinished() ? 1 : 0);
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        } catch (SQLException e) {
+            System.err.println("Errore nel salvataggio partite: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized List<Game> getGamesBetween(long fromEpochSecond, long toEpochSecond) {
+        List<Game> games = new ArrayList<>();
+        String sql = "SELECT * FROM games WHERE start_time >= ? AND start_time < ? ORDER BY start_time";
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setLong(1, fromEpochSecond);
+            pstmt.setLong(2, toEpochSecond);
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                games.add(new Game(
+                        rs.getInt("game_id"),
+                        rs.getLong("start_time"),
+                        rs.getString("status"),
+                        rs.getString("home_team"),
+                        rs.getString("away_team"),
+                        getNullableInt(rs, "home_score"),
+                        getNullableInt(rs, "away_score")
+                ));
+            }
+        } catch (SQLException e) {
+            System.err.println("Errore nel recupero partite: " + e.getMessage());
+        }
+        return games;
+    }
+
+    private static Integer getNullableInt(ResultSet rs, String column) throws SQLException {
+        int value = rs.getInt(column);
+        return rs.wasNull() ? null : value;
+    }
+
+    @Override
+    public synchronized GameDay getGameDay(String day) {
+        String sql = "SELECT * FROM game_days WHERE day = ?";
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setString(1, day);
+            ResultSet rs = pstmt.executeQuery();
+            if (rs.next()) {
+                return new GameDay(rs.getString("day"), rs.getInt("frozen") == 1, rs.getLong("last_synced"));
+            }
+        } catch (SQLException e) {
+            System.err.println("Errore nel recupero giornata: " + e.getMessage());
+        }
+        return null;
+    }
+
+    @Override
+    public synchronized void markGameDaySynced(String day, boolean frozen) {
+        String sql = "INSERT OR REPLACE INTO game_days (day, frozen, last_synced) VALUES (?, ?, strftime('%s', 'now'))";
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setString(1, day);
+            pstmt.setInt(2, frozen ? 1 : 0);
+            pstmt.executeUpdate();
+        } catch (SQLException e) {
+            System.err.println("Errore nell'aggiornamento giornata: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void savePlayerGameStats(List<PlayerGameStat> stats) {
+        String sql = """
+            INSERT OR REPLACE INTO player_game_stats
+                (player_id, game_id, season, player_name, points, rebounds, assists)
+            VALUES (?, ?, ?, ?, ?, ?, ?)
+        """;
+
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            for (PlayerGameStat stat : stats) {
+                pstmt.setInt(1, stat.playerId());
+                pstmt.setInt(2, stat.gameId());
+                pstmt.setInt(3, stat.season());
+                pstmt.setString(4, stat.playerName());
+                pstmt.setInt(5, stat.points());
+                pstmt.setInt(6, stat.rebounds());
+                pstmt.setInt(7, stat.assists());
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        } catch (SQLException e) {
+            System.err.println("Errore nel salvataggio statistiche partite: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized List<PlayerSeasonTotals> getPlayerSeasonTotals(int season) {
+        List<PlayerSeasonTotals> totals = new ArrayList<>();
+        String sql = """
+            SELECT player_id, MAX(player_name) AS player_name, COUNT(*) AS games,
+                   SUM(points) AS points, SUM(rebounds) AS rebounds, SUM(assists) AS assists
+            FROM player_game_stats
+            WHERE season = ?
+            GROUP BY player_id
+        """;
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setInt(1, season);
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                totals.add(new PlayerSeasonTotals(
+                        rs.getInt("player_id"),
+                        rs.getString("player_name"),
+                        rs.getInt("games"),
+                        rs.getInt("points"),
+                        rs.getInt("rebounds"),
+                        rs.getInt("assists")
+                ));
+            }
+        } catch (SQLException e) {
+            System.err.println("Errore nel recupero totali stagionali: " + e.getMessage());
+        }
+        return totals;
+    }
+
+    @Override
+    public void startMaintenance(int retentionDays, long intervalHours) {
+        maintenanceScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "db-maintenance");
+            t.setDaemon(true);
+            return t;
+        });
+        maintenanceScheduler.scheduleWithFixedDelay(
+                () -> runMaintenance(retentionDays), 5 * 60, intervalHours * 3600, TimeUnit.SECONDS);
+    }
+
+    void runMaintenance(int retentionDays) {
+        // Connessione dedicata: i batch brevi lasciano spazio alle scritture del bot
+        try (Connection conn = openConnection()) {
+            int compacted = compactSearchHistory(conn, "-" + retentionDays + " days");
+            try (Statement stmt = conn.createStatement()) {
+                // Il VACUUM completo blocca tutte le scritture: durante il servizio solo quello incrementale
+                if (needsFullVacuum(stmt)) {
+                    System.out.println("Database senza auto_vacuum incrementale, esegui a bot fermo: "
+                            + "java -cp nbabot.jar com.nbabot.database.VacuumConversion " + dbPath);
+                } else {
+                    stmt.execute("PRAGMA incremental_vacuum(" + VACUUM_PAGES_PER_RUN + ")");
+                }
+            }
+            System.out.println("Manutenzione database completata: " + compacted + " ricerche compattate");
+        } catch (SQLException e) {
+            System.err.println("Errore nella manutenzione del database: " + e.getMessage());
+        }
+    }
+
+    private int compactSearchHistory(Connection conn, String retention) throws SQLException {
+        String batchEndSql = """
+            SELECT MAX(id) FROM (
+                SELECT id FROM search_history
+                WHERE search_date < datetime('now', ?)
+                ORDER BY id LIMIT ?
+            )
+        """;
+        String rollupSql = """
+            INSERT INTO search_history_daily (search_day, search_type, search_query, search_count)
+            SELECT date(search_date), search_type, lower(search_query), COUNT(*)
+            FROM search_history
+            WHERE id <= ? AND search_date < datetime('now', ?)
+            GROUP BY date(search_date), search_type, lower(search_query)
+            ON CONFLICT (search_day, search_type, search_query)
+            DO UPDATE SET search_count = search_count + excluded.search_count
+        """;
+        String deleteSql = "DELETE FROM search_history WHERE id <= ? AND search_date < datetime('now', ?)";
+
+        int total = 0;
+        while (true) {
+            long batchEnd;
+            try (PreparedStatement pstmt = conn.prepareStatement(batchEndSql)) {
+                pstmt.setString(1, retention);
+                pstmt.setInt(2, MAINTENANCE_BATCH_SIZE);
+                ResultSet rs = pstmt.executeQuery();
+                batchEnd = rs.next() ? rs.getLong(1) : 0;
+                if (rs.wasNull() || batchEnd == 0) {
+                    return total;
+                }
+            }
+
+            conn.setAutoCommit(false);
+            try (PreparedStatement rollup = conn.prepareStatement(rollupSql);
+                 PreparedStatement delete = conn.prepareStatement(deleteSql)) {
+                rollup.setLong(1, batchEnd);
+                rollup.setString(2, retention);
+                rollup.executeUpdate();
+
+                delete.setLong(1, batchEnd);
+                delete.setString(2, retention);
+                total += delete.executeUpdate();
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return total;
+            }
+        }
+    }
+
+    static boolean needsFullVacuum(Statement stmt) throws SQLException {
+        // I database creati prima di auto_vacuum richiedono un VACUUM completo una sola volta
+        ResultSet rs = stmt.executeQuery("PRAGMA auto_vacuum");
+        return rs.next() && rs.getInt(1) != 2;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (maintenanceScheduler != null) {
+            maintenanceScheduler.shutdownNow();
+        }
         try {
             if (connection != null && !connection.isClosed()) {
                 connection.close();
@@ -263,12 +729,4 @@ public class DatabaseManager {
             System.err.println("Errore nella chiusura del database: " + e.getMessage());
         }
     }
-
-    // Inner classes per i dati
-    public record Favorite(int id, long userId, String type, int itemId,
-                           String itemName, String itemData, String savedDate) {}
-
-    public record UserStatistics(long userId, int totalSearches, int playerSearches,
-                                 int teamSearches, int totalFavorites,
-                                 int playerFavorites, int teamFavorites) {}
-}
\ No newline at end of file
+}
@@ -0,0 +1,20 @@
+package com.nbabot.database;
+
+import java.util.List;
+import java.util.Map;
+
+public interface FavoriteRepository {
+    boolean saveFavorite(long userId, String type, int itemId, String itemName, String itemData);
+
+    boolean removeFavorite(long userId, String type, int itemId);
+
+    List<Favorite> getFavorites(long userId, String type);
+
+    /**
+     * Elementi più salvati tra tutti gli utenti, con il numero di utenti che li hanno salvati.
+     */
+    Map<Integer, Integer> getMostFavorited(String type, int limit);
+
+    record Favorite(int id, long userId, String type, int itemId,
+                    String itemName, String itemData, String savedDate) {}
+}
@@ -0,0 +1,42 @@
+package com.nbabot.database;
+
+import java.util.List;
+
+public interface GameRepository {
+    /**
+     * Inserisce o aggiorna le partite; quelle già terminate nel database non vengono più modificate.
+     */
+    void saveGames(List<Game> games);
+
+    /**
+     * Partite con inizio in [fromEpochSecond, toEpochSecond), ordinate per orario.
+     */
+    List<Game> getGamesBetween(long fromEpochSecond, long toEpochSecond);
+
+    GameDay getGameDay(String day);
+
+    void markGameDaySynced(String day, boolean frozen);
+
+    /**
+     * status è il codice numerico di API-NBA v2: 1 da iniziare, 2 in corso, 3 terminata.
+     */
+    record Game(int gameId, long startEpochSecond, String status, String homeTeam, String awayTeam,
+                Integer homeScore, Integer awayScore) {
+        public static final String NOT_STARTED = "1";
+        public static final String LIVE = "2";
+        public static final String FINISHED = "3";
+
+        public boolean isFinished() {
+            return status.equals(FINISHED);
+        }
+
+        public boolean isNotStarted() {
+            return status.equals(NOT_STARTED);
+        }
+    }
+
+    /**
+     * Giorno UTC sincronizzato: frozen quando tutte le sue partite sono terminate.
+     */
+    record GameDay(String day, boolean frozen, long lastSyncedEpochSecond) {}
+}
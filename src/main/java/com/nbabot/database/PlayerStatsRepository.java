@@ -0,0 +1,15 @@
+package com.nbabot.database;
+
+import java.util.List;
+
+public interface PlayerStatsRepository {
+    void savePlayerGameStats(List<PlayerGameStat> stats);
+
+    List<PlayerSeasonTotals> getPlayerSeasonTotals(int season);
+
+    record PlayerGameStat(int playerId, int gameId, int season, String playerName,
+                          int points, int rebounds, int assists) {}
+
+    record PlayerSeasonTotals(int playerId, String playerName, int games,
+                              int points, int rebounds, int assists) {}
+}
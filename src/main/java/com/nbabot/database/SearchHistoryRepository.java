@@ -0,0 +1,14 @@
+package com.nbabot.database;
+
+import java.util.List;
+import java.util.Map;
+
+public interface SearchHistoryRepository {
+    void addSearchHistory(long userId, String searchType, String query);
+
+    Map<String, Integer> getTopSearchQueries(String searchType, int days, int limit);
+
+    List<TrendingSearches.Entry> getTrendingSearches(TrendingSearches.Period period, int limit);
+
+    void startMaintenance(int retentionDays, long intervalHours);
+}
@@ -0,0 +1,91 @@
+package com.nbabot.database;
+
+import org.sqlite.Function;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Divide un database a file singolo negli shard usati da {@link ShardedStorage}.
+ * Uso: java -cp nbabot.jar com.nbabot.database.ShardMigration &lt;DB_PATH&gt; &lt;DB_SHARDS&gt;
+ */
+public class ShardMigration {
+    private static final String[] USER_TABLES = {"users", "user_statistics", "favorites", "search_history"};
+    // Tabelle non legate agli utenti: restano tutte nello shard 0
+    private static final String[] GLOBAL_TABLES = {"search_history_daily", "team_logos", "games", "game_days",
+            "player_game_stats"};
+
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.err.println("Uso: ShardMigration <DB_PATH> <DB_SHARDS>");
+            System.exit(1);
+        }
+
+        String dbPath = args[0];
+        int shardCount = Integer.parseInt(args[1]);
+        if (!new File(dbPath).exists()) {
+            System.err.println("Database non trovato: " + dbPath);
+            System.exit(1);
+        }
+
+        try {
+            migrate(dbPath, shardCount);
+            System.out.println("Migrazione completata in " + shardCount + " shard");
+        } catch (SQLException e) {
+            System.err.println("Errore nella migrazione: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    public static void migrate(String dbPath, int shardCount) throws SQLException {
+        // Aggiorna lo schema della sorgente e crea quello degli shard
+        new DatabaseManager(dbPath).close();
+        for (int i = 0; i < shardCount; i++) {
+            new DatabaseManager(ShardedStorage.shardPath(dbPath, i)).close();
+        }
+
+        for (int i = 0; i < shardCount; i++) {
+            try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + ShardedStorage.shardPath(dbPath, i))) {
+                Function.create(conn, "shard_of", new Function() {
+                    @Override
+                    protected void xFunc() throws SQLException {
+                        result(ShardedStorage.shardFor(value_long(0), shardCount));
+                    }
+                });
+
+                try (PreparedStatement attach = conn.prepareStatement("ATTACH DATABASE ? AS src")) {
+                    attach.setString(1, dbPath);
+                    attach.execute();
+                }
+
+                conn.setAutoCommit(false);
+                for (String table : USER_TABLES) {
+                    copy(conn, table, "WHERE shard_of(user_id) = " + i);
+                }
+                if (i == 0) {
+                    for (String table : GLOBAL_TABLES) {
+                        copy(conn, table, "");
+                    }
+                }
+                conn.commit();
+                conn.setAutoCommit(true);
+
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("DETACH DATABASE src");
+                }
+            }
+            System.out.println("Shard " + i + " completato");
+        }
+    }
+
+    private static void copy(Connection conn, String table, String filter) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            int rows = stmt.executeUpdate("INSERT OR IGNORE INTO main." + table + " SELECT * FROM src." + table + " " + filter);
+            System.out.println("  " + table + ": " + rows + " righe");
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.nbabot.database;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Suddivide gli utenti su più file SQLite in base all'hash di user_id.
+ * Ogni shard ha un proprio thread di scrittura, quindi le scritture di utenti
+ * diversi procedono in parallelo invece di contendersi l'unico writer di SQLite.
+ * I dati non legati a un utente (loghi, calendario, statistiche per partita) stanno nello shard 0.
+ */
+public class ShardedStorage implements Storage {
+    private final List<DatabaseManager> shards = new ArrayList<>();
+    private final List<ExecutorService> writers = new ArrayList<>();
+
+    public ShardedStorage(String dbPath, int shardCount) {
+        for (int i = 0; i < shardCount; i++) {
+            shards.add(new DatabaseManager(shardPath(dbPath, i)));
+            int shard = i;
+            writers.add(Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "db-shard-" + shard);
+                t.setDaemon(true);
+                return t;
+            }));
+        }
+    }
+
+    public static String shardPath(String dbPath, int shard) {
+        int dot = dbPath.lastIndexOf('.');
+        return dot > 0
+                ? dbPath.substring(0, dot) + ".shard" + shard + dbPath.substring(dot)
+                : dbPath + ".shard" + shard;
+    }
+
+    public static int shardFor(long userId, int shardCount) {
+        // Mescola i bit: gli id Telegram consecutivi non devono finire sullo stesso shard
+        return Math.floorMod(Long.hashCode(userId * 0x9E3779B97F4A7C15L), shardCount);
+    }
+
+    private int indexOf(long userId) {
+        return shardFor(userId, shards.size());
+    }
+
+    private void write(long userId, Consumer<DatabaseManager> operation) {
+        int shard = indexOf(userId);
+        writers.get(shard).execute(() -> operation.accept(shards.get(shard)));
+    }
+
+    private <T> T call(int shard, Function<DatabaseManager, T> operation) {
+        return await(writers.get(shard).submit(() -> operation.apply(shards.get(shard))));
+    }
+
+    private <T> List<T> callAll(Function<DatabaseManager, T> operation) {
+        List<Future<T>> futures = new ArrayList<>();
+        for (int i = 0; i < shards.size(); i++) {
+            int shard = i;
+            futures.add(writers.get(i).submit(() -> operation.apply(shards.get(shard))));
+        }
+        List<T> results = new ArrayList<>();
+        for (Future<T> future : futures) {
+            results.add(await(future));
+        }
+        return results;
+    }
+
+    private static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    @Override
+    public void registerUser(long userId, String firstName, String lastName, String username) {
+        write(userId, db -> db.registerUser(userId, firstName, lastName, username));
+    }
+
+    @Override
+    public void updateLastInteraction(long userId) {
+        write(userId, db -> db.updateLastInteraction(userId));
+    }
+
+    @Override
+    public boolean saveFavorite(long userId, String type, int itemId, String itemName, String itemData) {
+        return call(indexOf(userId), db -> db.saveFavorite(userId, type, itemId, itemName, itemData));
+    }
+
+    @Override
+    public boolean removeFavorite(long userId, String type, int itemId) {
+        return call(indexOf(userId), db -> db.removeFavorite(userId, type, itemId));
+    }
+
+    @Override
+    public List<Favorite> getFavorites(long userId, String type) {
+        return call(indexOf(userId), db -> db.getFavorites(userId, type));
+    }
+
+    @Override
+    public Map<Integer, Integer> getMostFavorited(String type, int limit) {
+        Map<Integer, Integer> merged = new HashMap<>();
+        // Ogni shard restituisce un top più ampio del richiesto per ridurre l'errore dell'unione
+        for (Map<Integer, Integer> counts : callAll(db -> db.getMostFavorited(type, limit * 2))) {
+            counts.forEach((itemId, count) -> merged.merge(itemId, count, Integer::sum));
+        }
+        return topOf(merged, limit);
+    }
+
+    @Override
+    public void addSearchHistory(long userId, String searchType, String query) {
+        write(userId, db -> db.addSearchHistory(userId, searchType, query));
+    }
+
+    @Override
+    public Map<String, Integer> getTopSearchQueries(String searchType, int days, int limit) {
+        Map<String, Integer> merged = new HashMap<>();
+        for (Map<String, Integer> counts : callAll(db -> db.getTopSearchQueries(searchType, days, limit * 2))) {
+            counts.forEach((query, count) -> merged.merge(query, count, Integer::sum));
+        }
+        return topOf(merged, limit);
+    }
+
+    @Override
+    public List<TrendingSearches.Entry> getTrendingSearches(TrendingSearches.Period period, int limit) {
+        Map<String, TrendingSearches.Entry> merged = new HashMap<>();
+        for (List<TrendingSearches.Entry> entries : callAll(db -> db.getTrendingSearches(period, limit * 2))) {
+            for (TrendingSearches.Entry entry : entries) {
+                merged.merge(entry.type() + ":" + entry.query(), entry,
+                        (a, b) -> new TrendingSearches.Entry(a.type(), a.query(), a.score() + b.score()));
+            }
+        }
+        return merged.values().stream()
+                .sorted((a, b) -> Double.compare(b.score(), a.score()))
+                .limit(limit)
+                .toList();
+    }
+
+    @Override
+    public void startMaintenance(int retentionDays, long intervalHours) {
+        for (DatabaseManager shard : shards) {
+            shard.startMaintenance(retentionDays, intervalHours);
+        }
+    }
+
+    @Override
+    public UserStatistics getUserStatistics(long userId) {
+        return call(indexOf(userId), db -> db.getUserStatistics(userId));
+    }
+
+    @Override
+    public String getTeamLogoFileId(int teamId, String logoUrl) {
+        return call(0, db -> db.getTeamLogoFileId(teamId, logoUrl));
+    }
+
+    @Override
+    public void saveTeamLogoFileId(int teamId, String logoUrl, String fileId) {
+        writers.get(0).execute(() -> shards.get(0).saveTeamLogoFileId(teamId, logoUrl, fileId));
+    }
+
+    @Override
+    public void removeTeamLogoFileId(int teamId) {
+        writers.get(0).execute(() -> shards.get(0).removeTeamLogoFileId(teamId));
+    }
+
+    @Override
+    public void saveGames(List<Game> games) {
+        call(0, db -> {
+            db.saveGames(games);
+            return null;
+        });
+    }
+
+    @Override
+    public List<Game> getGamesBetween(long fromEpochSecond, long toEpochSecond) {
+        return call(0, db -> db.getGamesBetween(fromEpochSecond, toEpochSecond));
+    }
+
+    @Override
+    public GameDay getGameDay(String day) {
+        return call(0, db -> db.getGameDay(day));
+    }
+
+    @Override
+    public void markGameDaySynced(String day, boolean frozen) {
+        call(0, db -> {
+            db.markGameDaySynced(day, frozen);
+            return null;
+        });
+    }
+
+    @Override
+    public void savePlayerGameStats(List<PlayerGameStat> stats) {
+        writers.get(0).execute(() -> shards.get(0).savePlayerGameStats(stats));
+    }
+
+    @Override
+    public List<PlayerSeasonTotals> getPlayerSeasonTotals(int season) {
+        return call(0, db -> db.getPlayerSeasonTotals(season));
+    }
+
+    private static <K> Map<K, Integer> topOf(Map<K, Integer> counts, int limit) {
+        Map<K, Integer> top = new LinkedHashMap<>();
+        counts.entrySet().stream()
+                .sorted(Map.Entry.<K, Integer>comparingByValue().reversed())
+                .limit(limit)
+                .forEach(e -> top.put(e.getKey(), e.getValue()));
+        return top;
+    }
+
+    @Override
+    public void close() {
+        for (ExecutorService writer : writers) {
+            writer.shutdown();
+            try {
+                writer.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        for (DatabaseManager shard : shards) {
+            shard.close();
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.nbabot.database;
+
+public interface StatisticsRepository {
+    UserStatistics getUserStatistics(long userId);
+
+    record UserStatistics(long userId, int totalSearches, int playerSearches,
+                          int teamSearches, int totalFavorites,
+                          int playerFavorites, int teamFavorites) {}
+}
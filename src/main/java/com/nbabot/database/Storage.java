@@ -0,0 +1,10 @@
+package com.nbabot.database;
+
+/**
+ * Tutto lo stato persistente del bot. Implementato da {@link DatabaseManager} su un solo
+ * file SQLite e da {@link ShardedStorage} su più file suddivisi per utente.
+ */
+public interface Storage extends UserRepository, FavoriteRepository, SearchHistoryRepository,
+        StatisticsRepository, TeamLogoRepository, GameRepository, PlayerStatsRepository {
+    void close();
+}
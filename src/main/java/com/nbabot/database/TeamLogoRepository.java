@@ -0,0 +1,9 @@
+package com.nbabot.database;
+
+public interface TeamLogoRepository {
+    String getTeamLogoFileId(int teamId, String logoUrl);
+
+    void saveTeamLogoFileId(int teamId, String logoUrl, String fileId);
+
+    void removeTeamLogoFileId(int teamId);
+}
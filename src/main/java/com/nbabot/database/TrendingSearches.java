@@ -0,0 +1,127 @@
+package com.nbabot.database;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ricerche più popolari dell'ultima ora e dell'ultimo giorno, calcolate in streaming.
+ * Ogni finestra è un sommario Space-Saving a capacità fissa con decadimento esponenziale,
+ * quindi memoria e costo di lettura non dipendono dal numero di ricerche registrate.
+ */
+public class TrendingSearches {
+    public enum Period {
+        HOUR(3_600_000L),
+        DAY(86_400_000L);
+
+        private final long millis;
+
+        Period(long millis) {
+            this.millis = millis;
+        }
+    }
+
+    public record Entry(String type, String query, double score) {}
+
+    private static final int CAPACITY = 100;
+
+    private final Map<Period, SpaceSaving> windows = new HashMap<>();
+
+    public TrendingSearches() {
+        for (Period period : Period.values()) {
+            // Emivita pari a metà finestra: una ricerca vecchia di un periodo pesa un quarto
+            windows.put(period, new SpaceSaving(CAPACITY, period.millis));
+        }
+    }
+
+    public synchronized void record(String type, String query, long timestampMillis) {
+        String key = type.toLowerCase() + ":" + query.trim().toLowerCase();
+        for (SpaceSaving window : windows.values()) {
+            window.offer(key, timestampMillis);
+        }
+    }
+
+    public synchronized List<Entry> top(Period period, int limit, long nowMillis) {
+        return windows.get(period).top(limit, nowMillis);
+    }
+
+    private static class SpaceSaving {
+        private final int capacity;
+        private final long windowMillis;
+        private final double lambda;
+        private final double minScore;
+        // Per chiave: punteggio con forward decay e istante dell'ultima ricerca
+        private final Map<String, double[]> counters = new HashMap<>();
+        private long landmark = -1;
+
+        SpaceSaving(int capacity, long windowMillis) {
+            this.capacity = capacity;
+            this.windowMillis = windowMillis;
+            this.lambda = Math.log(2) / (windowMillis / 2.0);
+            // Peso di una singola ricerca fatta al bordo della finestra
+            this.minScore = Math.exp(-lambda * windowMillis);
+        }
+
+        void offer(String key, long timestamp) {
+            if (landmark < 0) {
+                landmark = timestamp;
+            }
+            // Forward decay: i nuovi eventi pesano di più invece di scalare tutti i contatori
+            double weight = Math.exp(lambda * (timestamp - landmark));
+            if (weight > 1e100) {
+                rescale(timestamp);
+                weight = 1;
+            }
+
+            double[] counter = counters.get(key);
+            if (counter != null) {
+                counter[0] += weight;
+                counter[1] = Math.max(counter[1], timestamp);
+                return;
+            }
+
+            if (counters.size() < capacity) {
+                counters.put(key, new double[]{weight, timestamp});
+                return;
+            }
+
+            // Sostituisce l'elemento meno frequente ereditandone il conteggio
+            String minKey = null;
+            double min = Double.MAX_VALUE;
+            for (Map.Entry<String, double[]> e : counters.entrySet()) {
+                if (e.getValue()[0] < min) {
+                    min = e.getValue()[0];
+                    minKey = e.getKey();
+                }
+            }
+            counters.remove(minKey);
+            counters.put(key, new double[]{min + weight, timestamp});
+        }
+
+        private void rescale(long newLandmark) {
+            double factor = Math.exp(-lambda * (newLandmark - landmark));
+            for (double[] counter : counters.values()) {
+                counter[0] *= factor;
+            }
+            landmark = newLandmark;
+        }
+
+        List<Entry> top(int limit, long now) {
+            double norm = landmark < 0 ? 1 : Math.exp(-lambda * (now - landmark));
+            List<Entry> result = new ArrayList<>(counters.size());
+            for (Map.Entry<String, double[]> e : counters.entrySet()) {
+                double score = e.getValue()[0] * norm;
+                // Fuori finestra: ricerche non ripetute entro il periodo o ormai trascurabili
+                if (now - e.getValue()[1] > windowMillis || score < minScore) {
+                    continue;
+                }
+                int sep = e.getKey().indexOf(':');
+                result.add(new Entry(e.getKey().substring(0, sep), e.getKey().substring(sep + 1), score));
+            }
+            result.sort(Comparator.comparingDouble(Entry::score).reversed());
+            return result.size() > limit ? result.subList(0, limit) : result;
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package com.nbabot.database;
+
+public interface UserRepository {
+    void registerUser(long userId, String firstName, String lastName, String username);
+
+    void updateLastInteraction(long userId);
+}
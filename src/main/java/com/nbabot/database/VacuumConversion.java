@@ -0,0 +1,41 @@
+package com.nbabot.database;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Converte una volta un database esistente all'auto_vacuum incrementale usato dalla manutenzione.
+ * Il VACUUM completo riscrive il file con un lock esclusivo: va eseguito a bot fermo.
+ * Uso: java -cp nbabot.jar com.nbabot.database.VacuumConversion &lt;DB_PATH&gt;
+ */
+public class VacuumConversion {
+    public static void main(String[] args) {
+        if (args.length != 1) {
+            System.err.println("Uso: VacuumConversion <DB_PATH>");
+            System.exit(1);
+        }
+
+        String dbPath = args[0];
+        if (!new File(dbPath).exists()) {
+            System.err.println("Database non trovato: " + dbPath);
+            System.exit(1);
+        }
+
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + dbPath);
+             Statement stmt = conn.createStatement()) {
+            if (!DatabaseManager.needsFullVacuum(stmt)) {
+                System.out.println("Database già convertito: " + dbPath);
+                return;
+            }
+            stmt.execute("PRAGMA auto_vacuum = INCREMENTAL");
+            stmt.execute("VACUUM");
+            System.out.println("Conversione completata: " + dbPath);
+        } catch (SQLException e) {
+            System.err.println("Errore nella conversione: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
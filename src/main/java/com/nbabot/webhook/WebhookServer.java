@@ -0,0 +1,119 @@
+package com.nbabot.webhook;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.telegram.telegrambots.longpolling.util.LongPollingSingleThreadUpdateConsumer;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Riceve gli update di Telegram via webhook con un server HTTP embedded.
+ * Ogni richiesta viene confermata subito e l'update passa allo stesso
+ * consumer usato dal long polling, su un singolo thread come in quel caso.
+ */
+public class WebhookServer implements AutoCloseable {
+    private static final String SECRET_HEADER = "X-Telegram-Bot-Api-Secret-Token";
+    // Un update di Telegram pesa pochi KB: corpi più grandi vengono rifiutati senza leggerli tutti
+    private static final int MAX_BODY_BYTES = 1024 * 1024;
+
+    private final HttpServer server;
+    private final ExecutorService updateExecutor;
+    private final ObjectMapper mapper;
+    private final LongPollingSingleThreadUpdateConsumer consumer;
+    private final String secretToken;
+
+    public WebhookServer(int port, String path, String secretToken,
+                         LongPollingSingleThreadUpdateConsumer consumer) throws IOException {
+        this.consumer = consumer;
+        this.secretToken = secretToken;
+        this.mapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        this.updateExecutor = Executors.newSingleThreadExecutor();
+        // Senza secret nessuno può verificare il mittente: il server resta raggiungibile solo in locale
+        InetSocketAddress address = secretToken == null || secretToken.isEmpty()
+                ? new InetSocketAddress(InetAddress.getLoopbackAddress(), port)
+                : new InetSocketAddress(port);
+        this.server = HttpServer.create(address, 0);
+        this.server.createContext(path, this::handle);
+        // Le richieste vengono solo lette e accodate, bastano pochi thread
+        this.server.setExecutor(Executors.newFixedThreadPool(4));
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+
+            if (!isAuthorized(exchange.getRequestHeaders().getFirst(SECRET_HEADER))) {
+                exchange.sendResponseHeaders(401, -1);
+                return;
+            }
+
+            Update update;
+            try (InputStream body = exchange.getRequestBody()) {
+                byte[] content = body.readNBytes(MAX_BODY_BYTES + 1);
+                if (content.length > MAX_BODY_BYTES) {
+                    exchange.sendResponseHeaders(413, -1);
+                    return;
+                }
+                update = mapper.readValue(content, Update.class);
+            } catch (IOException e) {
+                System.err.println("Update webhook non valido: " + e.getMessage());
+                exchange.sendResponseHeaders(400, -1);
+                return;
+            }
+
+            // Risposta immediata: Telegram non deve attendere l'elaborazione
+            exchange.sendResponseHeaders(200, -1);
+            updateExecutor.execute(() -> {
+                try {
+                    consumer.consume(update);
+                } catch (Exception e) {
+                    System.err.println("Errore nell'elaborazione update: " + e.getMessage());
+                }
+            });
+        }
+    }
+
+    private boolean isAuthorized(String received) {
+        if (secretToken == null || secretToken.isEmpty()) {
+            return true;
+        }
+        if (received == null) {
+            return false;
+        }
+        return MessageDigest.isEqual(
+                secretToken.getBytes(StandardCharsets.UTF_8),
+                received.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void close() {
+        server.stop(1);
+        updateExecutor.shutdown();
+        try {
+            updateExecutor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (server.getExecutor() instanceof ExecutorService executor) {
+            executor.shutdown();
+        }
+    }
+}